@@ -0,0 +1,24 @@
+package com.chat.benchmark;
+
+import com.chat.ChatApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Starts the application against the embedded H2 database from the test resources,
+ * on a random port and with quiet logging, for benchmarks that need real beans.
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {}
+
+    static ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(ChatApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.main.banner-mode=off",
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=WARN")
+                .run();
+    }
+}
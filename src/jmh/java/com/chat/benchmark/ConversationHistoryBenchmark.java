@@ -0,0 +1,78 @@
+package com.chat.benchmark;
+
+import com.chat.dto.MessagePage;
+import com.chat.entity.Message;
+import com.chat.service.MessageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversation history reads: the full history endpoint and one keyset page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversationHistoryBenchmark {
+
+    private static final long ALICE = 1L;
+    private static final long BOB = 2L;
+
+    @Param({"100", "1000"})
+    public int conversationSize;
+
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        messageService = context.getBean(MessageService.class);
+
+        LocalDateTime start = LocalDateTime.now().minusDays(1);
+        List<Message> batch = new ArrayList<>(conversationSize);
+        for (int i = 0; i < conversationSize; i++) {
+            Message m = new Message();
+            m.setSenderId(i % 2 == 0 ? ALICE : BOB);
+            m.setReceiverId(i % 2 == 0 ? BOB : ALICE);
+            m.setContent("benchmark message " + i);
+            m.setSentAt(start.plusSeconds(i));
+            batch.add(m);
+        }
+        messageService.saveBatch(batch);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Message> fullHistory() {
+        return messageService.getConversationHistory(ALICE, BOB);
+    }
+
+    @Benchmark
+    public MessagePage latestPage() {
+        return messageService.getConversationPage(ALICE, BOB, null, null, 50);
+    }
+}
@@ -0,0 +1,99 @@
+package com.chat.benchmark;
+
+import com.chat.config.CborFrameEncoding;
+import com.chat.dto.MessageView;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON against CBOR payloads for a live chat message: writing each directly, and the
+ * JSON to CBOR transcode CborFrameEncoding does per CBOR session. Server CPU per 1M
+ * messages is ns/op in milliseconds. Payload and STOMP frame sizes are printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameEncodingBenchmark {
+
+    private final StompEncoder encoder = new StompEncoder();
+
+    private ObjectMapper jsonMapper;
+    private ObjectMapper cborMapper;
+    private ObjectWriter jsonWriter;
+    private ObjectWriter cborWriter;
+    private MessageView view;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws Exception {
+        jsonMapper = JsonMapper.builder().build();
+        cborMapper = new CBORMapper();
+        jsonWriter = jsonMapper.writerFor(MessageView.class);
+        cborWriter = cborMapper.writerFor(MessageView.class);
+        view = new MessageView(371234567890123456L, 1001L, 1002L,
+                "Hey, are we still on for lunch tomorrow at noon?", 1718031234567L, true, false,
+                "c-1718031234567-42");
+        json = jsonWriter.writeValueAsBytes(view);
+        byte[] cbor = transcode();
+
+        System.out.printf("%npayload: json %d bytes, cbor %d bytes; STOMP frame: json %d bytes, cbor %d bytes%n",
+                json.length, cbor.length,
+                frame(json, MimeTypeUtils.APPLICATION_JSON).length,
+                frame(cbor, CborFrameEncoding.APPLICATION_CBOR).length);
+    }
+
+    @Benchmark
+    public byte[] writeJson() throws Exception {
+        return jsonWriter.writeValueAsBytes(view);
+    }
+
+    @Benchmark
+    public byte[] writeCbor() throws Exception {
+        return cborWriter.writeValueAsBytes(view);
+    }
+
+    @Benchmark
+    public byte[] transcode() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = jsonMapper.getFactory().createParser(json);
+             JsonGenerator generator = cborMapper.getFactory().createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] frame(byte[] payload, MimeType contentType) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination("/user/queue/messages");
+        accessor.setSubscriptionId("sub-0");
+        accessor.setMessageId("a1b2c3d4-5");
+        accessor.setContentType(contentType);
+        return encoder.encode(accessor.getMessageHeaders(), payload);
+    }
+}
@@ -0,0 +1,92 @@
+package com.chat.benchmark;
+
+import com.chat.entity.Friend;
+import com.chat.entity.FriendId;
+import com.chat.entity.User;
+import com.chat.repository.FriendRepository;
+import com.chat.repository.UserRepository;
+import com.chat.service.FriendService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FriendService.areFriends from the adjacency cache, against the primary key probe
+ * it falls back to, for growing friend lists.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FriendCheckBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int friendCount;
+
+    private ConfigurableApplicationContext context;
+    private FriendService friendService;
+    private FriendRepository friendRepository;
+    private Long userId;
+    private Long lastFriendId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        friendService = context.getBean(FriendService.class);
+        friendRepository = context.getBean(FriendRepository.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+
+        userId = userRepository.save(user("owner")).getUserId();
+        List<User> friends = new ArrayList<>(friendCount);
+        for (int i = 0; i < friendCount; i++) {
+            friends.add(user("friend" + i));
+        }
+        List<Friend> friendships = new ArrayList<>(friendCount);
+        for (User friend : userRepository.saveAll(friends)) {
+            friendships.add(new Friend(userId, friend.getUserId()));
+            lastFriendId = friend.getUserId();
+        }
+        friendRepository.saveAll(friendships);
+        friendService.getFriendIds(userId);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean cachedAreFriends() {
+        return friendService.areFriends(userId, lastFriendId);
+    }
+
+    @Benchmark
+    public boolean primaryKeyProbe() {
+        return friendRepository.existsById(new FriendId(userId, lastFriendId));
+    }
+
+    private static User user(String username) {
+        User u = new User();
+        u.setUsername(username);
+        u.setEmail(username + "@example.com");
+        u.setPasswordHash("x");
+        return u;
+    }
+}
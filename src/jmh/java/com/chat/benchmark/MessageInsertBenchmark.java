@@ -0,0 +1,70 @@
+package com.chat.benchmark;
+
+import com.chat.entity.Message;
+import com.chat.service.MessageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving messages through MessageService.saveBatch in batches of 1, 10 and 100.
+ * Inserts per second are batchSize times the reported ops/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageInsertBenchmark {
+
+    private static final long ALICE = 1L;
+    private static final long BOB = 2L;
+
+    @Param({"1", "10", "100"})
+    public int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        messageService = context.getBean(MessageService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Message> saveBatch() {
+        List<Message> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            Message m = new Message();
+            m.setSenderId(ALICE);
+            m.setReceiverId(BOB);
+            m.setContent("batched " + i);
+            m.setSentAt(LocalDateTime.now());
+            batch.add(m);
+        }
+        return messageService.saveBatch(batch);
+    }
+}
@@ -0,0 +1,90 @@
+package com.chat.benchmark;
+
+import com.chat.dto.MessageDto;
+import com.chat.dto.MessageMapper;
+import com.chat.dto.MessageView;
+import com.chat.entity.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MessageDto -> Message -> MessageView mapping as done by WebSocketController, and
+ * Jackson serialization of each shape.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageMappingBenchmark {
+
+    private ObjectMapper objectMapper;
+    private MessageDto dto;
+    private Message message;
+    private byte[] dtoJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = JsonMapper.builder().addModule(new JavaTimeModule()).build();
+
+        dto = new MessageDto();
+        dto.senderId = 1001L;
+        dto.receiverId = 1002L;
+        dto.content = "Hey, are we still on for lunch tomorrow at noon?";
+        dto.clientMessageId = "c-1718031234567-42";
+
+        message = toMessage(dto);
+        message.setMessageId(123456789012345L);
+        dtoJson = objectMapper.writeValueAsBytes(dto);
+    }
+
+    @Benchmark
+    public Message dtoToMessage() {
+        return toMessage(dto);
+    }
+
+    @Benchmark
+    public MessageView messageToView() {
+        return MessageMapper.toView(message, dto.clientMessageId);
+    }
+
+    @Benchmark
+    public byte[] serializeDto() throws Exception {
+        return objectMapper.writeValueAsBytes(dto);
+    }
+
+    @Benchmark
+    public byte[] serializeMessageEntity() throws Exception {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public MessageDto deserializeDto() throws Exception {
+        return objectMapper.readValue(dtoJson, MessageDto.class);
+    }
+
+    private static Message toMessage(MessageDto msg) {
+        Message m = new Message();
+        m.setSenderId(msg.senderId);
+        m.setReceiverId(msg.receiverId);
+        m.setContent(msg.content);
+        m.setSentAt(LocalDateTime.now());
+        m.setDelivered(true);
+        return m;
+    }
+}
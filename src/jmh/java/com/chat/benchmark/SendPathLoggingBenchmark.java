@@ -0,0 +1,121 @@
+package com.chat.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logging cost of one message send with several threads sending at once:
+ * the old System.out println of the full message, a synchronous SLF4J appender,
+ * and the bounded async appender used by logback-spring.xml. Output goes to a
+ * file under target/ so the terminal does not skew the numbers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class SendPathLoggingBenchmark {
+
+    private static final String CONTENT = "Hey, are we still on for lunch tomorrow at noon?";
+
+    @Param({"stdout", "sync", "async"})
+    public String mode;
+
+    private final AtomicLong ids = new AtomicLong();
+    private OutputStream out;
+    private PrintStream stdout;
+    private LoggerContext context;
+    private Logger log;
+
+    @Setup
+    public void setUp() throws IOException {
+        Path logFile = Path.of("target", "jmh-logging-" + mode + ".log");
+        Files.createDirectories(logFile.getParent());
+        out = new FileOutputStream(logFile.toFile());
+
+        if ("stdout".equals(mode)) {
+            stdout = new PrintStream(out, true);
+            return;
+        }
+
+        context = new LoggerContext();
+        context.setMDCAdapter(new LogbackMDCAdapter());
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{ISO8601} %5level [%thread] %logger{36} : %msg%n");
+        encoder.start();
+
+        OutputStreamAppender<ILoggingEvent> file = new OutputStreamAppender<>();
+        file.setContext(context);
+        file.setEncoder(encoder);
+        file.setOutputStream(out);
+        file.start();
+
+        Appender<ILoggingEvent> appender = file;
+        if ("async".equals(mode)) {
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setQueueSize(8192);
+            async.setNeverBlock(true);
+            async.addAppender(file);
+            async.start();
+            appender = async;
+        }
+
+        log = context.getLogger("com.chat.service.MessageService");
+        log.setLevel(Level.DEBUG);
+        log.setAdditive(false);
+        log.addAppender(appender);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (context != null) {
+            context.stop();
+        }
+        out.close();
+    }
+
+    @Benchmark
+    public long send() {
+        long id = ids.incrementAndGet();
+        if (stdout != null) {
+            // What MessageService.send used to print for every message
+            stdout.println("Saving message: sender=1001, receiver=1002, content=" + CONTENT);
+        } else {
+            log.debug("Saved message {} from {} to {}", id, 1001L, 1002L);
+        }
+        return id;
+    }
+}
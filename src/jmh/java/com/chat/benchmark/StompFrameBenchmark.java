@@ -0,0 +1,83 @@
+package com.chat.benchmark;
+
+import com.chat.dto.MessageDto;
+import com.chat.dto.MessageView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a MessageView into the STOMP MESSAGE frame a subscriber receives, and
+ * decoding the SEND frame a client publishes to /app/chat.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StompFrameBenchmark {
+
+    private final StompEncoder encoder = new StompEncoder();
+    private final StompDecoder decoder = new StompDecoder();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private MessageView view;
+    private byte[] sendFrame;
+
+    @Setup
+    public void setUp() throws Exception {
+        view = new MessageView(123456789012345L, 1001L, 1002L,
+                "Hey, are we still on for lunch tomorrow at noon?", 1718031234567L, false, false,
+                "c-1718031234567-42");
+
+        MessageDto dto = new MessageDto();
+        dto.senderId = 1001L;
+        dto.receiverId = 1002L;
+        dto.content = "Hey, are we still on for lunch tomorrow at noon?";
+        dto.clientMessageId = "c-1718031234567-42";
+
+        StompHeaderAccessor send = StompHeaderAccessor.create(StompCommand.SEND);
+        send.setDestination("/app/chat");
+        send.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        send.setLeaveMutable(true);
+        sendFrame = encoder.encode(MessageBuilder.createMessage(
+                objectMapper.writeValueAsBytes(dto), send.getMessageHeaders()));
+    }
+
+    @Benchmark
+    public byte[] encodeMessageFrame() throws Exception {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination("/user/queue/messages");
+        accessor.setSubscriptionId("sub-0");
+        accessor.setMessageId("msg-1");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        byte[] payload = objectMapper.writeValueAsBytes(view);
+        return encoder.encode(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+    }
+
+    @Benchmark
+    public MessageDto decodeSendFrame() throws Exception {
+        List<Message<byte[]>> messages = decoder.decode(ByteBuffer.wrap(sendFrame));
+        return objectMapper.readValue(messages.get(0).getPayload(), MessageDto.class);
+    }
+}
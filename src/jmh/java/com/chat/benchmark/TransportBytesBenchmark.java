@@ -0,0 +1,150 @@
+package com.chat.benchmark;
+
+import com.chat.dto.MessageView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Bytes on the wire for one live chat MESSAGE frame per transport: plain WebSocket
+ * (/ws-native), SockJS over WebSocket (/ws, the frame JSON-escaped inside a["..."]), each
+ * with and without permessage-deflate. Compressed sizes are averaged over a stream of 100
+ * messages with context takeover, as the container runs it. Sizes are printed at setup;
+ * the benchmarks time the server's deflate of one frame.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportBytesBenchmark {
+
+    private static final int STREAM = 100;
+    private static final String[] WORDS = ("hey are we still on for lunch tomorrow at noon yes same place "
+            + "as last time sounds good see you there running late sorry did get my message about the "
+            + "train tickets weekend call me when free thanks no problem what about dinner tonight maybe "
+            + "later can't today how was meeting great news").split(" ");
+
+    private final StompEncoder encoder = new StompEncoder();
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+
+    private byte[][] nativeFrames;
+    private byte[][] sockJsFrames;
+    private Deflater deflater;
+    private final byte[] buffer = new byte[8192];
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        nativeFrames = new byte[STREAM][];
+        sockJsFrames = new byte[STREAM][];
+        // Fixed seed: every run sees the same stream of distinct messages
+        Random random = new Random(42);
+        for (int i = 0; i < STREAM; i++) {
+            StringBuilder content = new StringBuilder();
+            for (int w = 4 + random.nextInt(10); w > 0; w--) {
+                content.append(WORDS[random.nextInt(WORDS.length)]).append(w > 1 ? " " : "");
+            }
+            MessageView view = new MessageView(371234567890123456L + random.nextInt(1 << 20) * 4096L,
+                    1001L + i % 2, 1002L - i % 2, content.toString(), 1718031234567L + random.nextInt(600_000),
+                    true, false,
+                    "c-" + (1718031234567L + random.nextInt(600_000)) + "-" + i);
+            nativeFrames[i] = frame(objectMapper.writeValueAsBytes(view), i);
+            // SockJS: the frame text as a one-element JSON array behind an "a"
+            String text = new String(nativeFrames[i], StandardCharsets.UTF_8);
+            sockJsFrames[i] = ("a" + objectMapper.writeValueAsString(new String[] {text}))
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        System.out.printf("%nper MESSAGE frame, WebSocket header included:%n");
+        System.out.printf("  native  %.1f bytes, deflated %.1f bytes, deflated without context takeover %.1f bytes%n",
+                plain(nativeFrames), deflated(nativeFrames, true), deflated(nativeFrames, false));
+        System.out.printf("  SockJS  %.1f bytes, deflated %.1f bytes, deflated without context takeover %.1f bytes%n",
+                plain(sockJsFrames), deflated(sockJsFrames, true), deflated(sockJsFrames, false));
+    }
+
+    @TearDown
+    public void tearDown() {
+        deflater.end();
+    }
+
+    // One frame through a session's deflater, as the container does it per message
+    @Benchmark
+    public int deflateNative() {
+        return deflate(deflater, nativeFrames[next++ % STREAM]);
+    }
+
+    @Benchmark
+    public int deflateSockJs() {
+        return deflate(deflater, sockJsFrames[next++ % STREAM]);
+    }
+
+    private byte[] frame(byte[] payload, int i) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination("/user/queue/messages");
+        accessor.setSubscriptionId("sub-0");
+        accessor.setMessageId("a1b2c3d4-" + i);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return encoder.encode(accessor.getMessageHeaders(), payload);
+    }
+
+    private static double plain(byte[][] frames) {
+        long total = 0;
+        for (byte[] frame : frames) {
+            total += header(frame.length) + frame.length;
+        }
+        return total / (double) frames.length;
+    }
+
+    private double deflated(byte[][] frames, boolean contextTakeover) {
+        Deflater session = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        long total = 0;
+        for (byte[] frame : frames) {
+            if (!contextTakeover) {
+                session.reset();
+            }
+            int size = deflate(session, frame);
+            total += header(size) + size;
+        }
+        session.end();
+        return total / (double) frames.length;
+    }
+
+    // RFC 7692: sync flush, and the trailing 00 00 ff ff is not sent
+    private int deflate(Deflater session, byte[] frame) {
+        session.setInput(frame);
+        int size = 0;
+        int written;
+        do {
+            written = session.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            size += written;
+        } while (written == buffer.length);
+        return size - 4;
+    }
+
+    // Server to client frames are unmasked
+    private static int header(int length) {
+        return length < 126 ? 2 : length < 65536 ? 4 : 10;
+    }
+}
@@ -0,0 +1,114 @@
+package com.chat.benchmark;
+
+import com.chat.dto.HistoryPage;
+import com.chat.dto.MessageMapper;
+import com.chat.dto.MessageView;
+import com.chat.entity.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a message on the wire: the Message entity as history used to return it
+ * against the MessageView record, alone and as a 50 message history page. Bytes per
+ * message are printed once at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    private ObjectMapper objectMapper;
+    private ObjectWriter viewWriter;
+    private Message message;
+    private MessageView view;
+    private List<Message> entities;
+    private HistoryPage page;
+
+    @Setup
+    public void setUp() throws Exception {
+        // As Spring Boot configures it: ISO-8601 dates
+        objectMapper = JsonMapper.builder()
+                .addModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        viewWriter = objectMapper.writerFor(MessageView.class);
+
+        entities = new ArrayList<>(PAGE_SIZE);
+        LocalDateTime start = LocalDateTime.of(2024, 6, 10, 12, 0);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            Message m = new Message();
+            m.setMessageId(371234567890123456L + i);
+            m.setSenderId(i % 2 == 0 ? 1001L : 1002L);
+            m.setReceiverId(i % 2 == 0 ? 1002L : 1001L);
+            m.setConversationKey(Message.conversationKey(1001L, 1002L));
+            m.setContent("Hey, are we still on for lunch tomorrow at noon?");
+            m.setSentAt(start.plusSeconds(i * 7L).plusNanos(123_456_789));
+            m.setDelivered(true);
+            entities.add(m);
+        }
+        message = entities.get(0);
+        view = MessageMapper.toView(message);
+        page = new HistoryPage(MessageMapper.toViews(entities), true);
+
+        System.out.printf("%nentity: %d bytes/message, view: %d bytes/message%n",
+                objectMapper.writeValueAsBytes(message).length, viewWriter.writeValueAsBytes(view).length);
+        System.out.printf("%d message page: entities %.1f bytes/message, views %.1f bytes/message%n",
+                PAGE_SIZE, objectMapper.writeValueAsBytes(entities).length / (double) PAGE_SIZE,
+                objectMapper.writeValueAsBytes(page).length / (double) PAGE_SIZE);
+    }
+
+    @Benchmark
+    public byte[] entity() throws Exception {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] view() throws Exception {
+        return objectMapper.writeValueAsBytes(view);
+    }
+
+    // As MessageDeliveryService writes it
+    @Benchmark
+    public byte[] viewSharedWriter() throws Exception {
+        return viewWriter.writeValueAsBytes(view);
+    }
+
+    // Mapping included, as the controllers do it
+    @Benchmark
+    public byte[] mapAndWriteView() throws Exception {
+        return viewWriter.writeValueAsBytes(MessageMapper.toView(message));
+    }
+
+    @Benchmark
+    public byte[] entityPage() throws Exception {
+        return objectMapper.writeValueAsBytes(entities);
+    }
+
+    @Benchmark
+    public byte[] viewPage() throws Exception {
+        return objectMapper.writeValueAsBytes(MessageMapper.toViews(entities));
+    }
+}
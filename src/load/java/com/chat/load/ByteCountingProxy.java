@@ -0,0 +1,93 @@
+package com.chat.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TCP relay in front of one application node that counts the bytes passing each way,
+ * so a run can report what a transport actually puts on the wire: HTTP upgrade,
+ * WebSocket framing, SockJS framing and compression included. Two threads per
+ * connection; it shares the JVM with everything else, so leave it off when measuring CPU.
+ */
+final class ByteCountingProxy implements AutoCloseable {
+
+    private final ServerSocket server;
+    private final int targetPort;
+    private final ExecutorService threads = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "load-proxy");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong toServer = new AtomicLong();
+    private final AtomicLong toClient = new AtomicLong();
+
+    ByteCountingProxy(int targetPort) throws IOException {
+        this.targetPort = targetPort;
+        this.server = new ServerSocket(0, 1000, InetAddress.getLoopbackAddress());
+        threads.execute(this::accept);
+    }
+
+    int port() {
+        return server.getLocalPort();
+    }
+
+    long bytesToServer() {
+        return toServer.get();
+    }
+
+    long bytesToClient() {
+        return toClient.get();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket client = server.accept();
+                Socket upstream = new Socket(InetAddress.getLoopbackAddress(), targetPort);
+                client.setTcpNoDelay(true);
+                upstream.setTcpNoDelay(true);
+                threads.execute(() -> pump(client, upstream, toServer));
+                threads.execute(() -> pump(upstream, client, toClient));
+            } catch (IOException e) {
+                // Closed, or the node refused; the client sees the failure
+            }
+        }
+    }
+
+    private static void pump(Socket from, Socket to, AtomicLong counter) {
+        byte[] buffer = new byte[16384];
+        try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                counter.addAndGet(read);
+            }
+        } catch (IOException e) {
+            // Connection closed from either side
+        } finally {
+            closeQuietly(from);
+            closeQuietly(to);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        threads.shutdownNow();
+    }
+}
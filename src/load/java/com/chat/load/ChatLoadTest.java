@@ -0,0 +1,405 @@
+package com.chat.load;
+
+import com.chat.ChatApplication;
+import com.chat.config.WebSocketCompression;
+import com.chat.entity.Friend;
+import com.chat.entity.User;
+import com.chat.repository.FriendRepository;
+import com.chat.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end load test. Starts the application in-process on a random port with the
+ * embedded test database, creates users and a friend graph, logs every user in through
+ * the form login, opens one STOMP session per user, over plain WebSocket on /ws-native or
+ * SockJS on /ws, and sends chat messages to random friends at a fixed rate. Reports
+ * send-to-receive latency percentiles, errors, process CPU/heap and sessions per busy
+ * core. Client and server share the JVM, so CPU and heap include both.
+ *
+ * Settings (system properties):
+ *   load.sessions          users, one session each (default 200)
+ *   load.friends           friends per user (default 10)
+ *   load.rate              messages per second across all sessions (default 1000)
+ *   load.warmup            warm-up before measuring, e.g. 10s (default 10s)
+ *   load.duration          measured run, e.g. 30s (default 30s)
+ *   load.report            JSON report file (default target/load-report.json)
+ *   load.nodes             application instances in this JVM joined by the local cluster bus (default 1)
+ *   load.transport         native (/ws-native, as browsers connect) or sockjs (/ws)
+ *                          (default native)
+ *   load.compression       request permessage-deflate (default true, as browsers do)
+ *   load.wire-bytes        relay sessions through a byte-counting proxy and report bytes per
+ *                          message; it adds a hop and CPU of its own (default false)
+ * Any application property can be passed the same way, e.g. -Dchat.websocket.delivery-mode=broadcast
+ * or -Dspring.threads.virtual.enabled=true (Java 21).
+ */
+public final class ChatLoadTest {
+
+    private static final String PASSWORD = "load-test-password";
+
+    private ChatLoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        int sessions = Integer.getInteger("load.sessions", 200);
+        int friends = Math.min(Integer.getInteger("load.friends", 10), sessions - 1);
+        int rate = Integer.getInteger("load.rate", 1000);
+        Duration warmup = Duration.parse("PT" + System.getProperty("load.warmup", "10s"));
+        Duration duration = Duration.parse("PT" + System.getProperty("load.duration", "30s"));
+        Path reportFile = Path.of(System.getProperty("load.report", "target/load-report.json"));
+
+        int nodes = Math.max(1, Integer.getInteger("load.nodes", 1));
+        boolean sockJs = "sockjs".equalsIgnoreCase(System.getProperty("load.transport", "native"));
+        boolean compression = Boolean.parseBoolean(System.getProperty("load.compression", "true"));
+        boolean wireBytes = Boolean.getBoolean("load.wire-bytes");
+        // Several nodes share one database and are joined by the in-JVM cluster bus
+        String database = "jdbc:h2:mem:chat-load;MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE";
+        List<ConfigurableApplicationContext> contexts = new ArrayList<>(nodes);
+        int[] ports = new int[nodes];
+        for (int n = 0; n < nodes; n++) {
+            List<String> nodeArgs = new ArrayList<>(List.of(args));
+            if (nodes > 1) {
+                nodeArgs.add("--spring.datasource.url=" + database);
+                // The first node creates the schema
+                nodeArgs.add("--spring.jpa.hibernate.ddl-auto=" + (n == 0 ? "create-drop" : "none"));
+            }
+            ConfigurableApplicationContext node = new SpringApplicationBuilder(ChatApplication.class)
+                    .properties(
+                            "server.port=0",
+                            "spring.main.banner-mode=off",
+                            "spring.jpa.show-sql=false",
+                            "logging.level.root=WARN",
+                            "chat.broker.mode=" + (nodes > 1 ? "bus" : "simple"),
+                            "chat.broker.bus.transport=local")
+                    .run(nodeArgs.toArray(String[]::new));
+            contexts.add(node);
+            ports[n] = ((WebServerApplicationContext) node).getWebServer().getPort();
+        }
+        ConfigurableApplicationContext context = contexts.get(0);
+        System.out.printf("%d node(s) on ports %s, %d sessions, %d friends each, %d msg/s over %s%s%n",
+                nodes, Arrays.toString(ports), sessions, friends, rate, sockJs ? "SockJS" : "WebSocket",
+                compression ? " with permessage-deflate" : "");
+        List<ByteCountingProxy> proxies = new ArrayList<>();
+        int[] connectPorts = ports.clone();
+        if (wireBytes) {
+            for (int n = 0; n < nodes; n++) {
+                ByteCountingProxy proxy = new ByteCountingProxy(ports[n]);
+                proxies.add(proxy);
+                connectPorts[n] = proxy.port();
+            }
+        }
+
+        List<User> users = createUsers(context, sessions, friends);
+        long[][] friendIds = friendIds(users, friends);
+
+        Recorder latency = new Recorder(TimeUnit.SECONDS.toNanos(60), 3);
+        AtomicLong received = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        AtomicLong sent = new AtomicLong();
+
+        ThreadPoolTaskScheduler heartbeats = new ThreadPoolTaskScheduler();
+        heartbeats.setPoolSize(2);
+        heartbeats.initialize();
+        StandardWebSocketClient webSocketClient = new StandardWebSocketClient();
+        WebSocketStompClient stompClient = sockJs
+                ? new WebSocketStompClient(new SockJsClient(List.of(new WebSocketTransport(webSocketClient))))
+                : new WebSocketStompClient(webSocketClient);
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        stompClient.setTaskScheduler(heartbeats);
+
+        HttpClient http = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build();
+        List<LoadSession> clients = new ArrayList<>(sessions);
+        long connectStart = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            User user = users.get(i);
+            // Sessions are spread over the nodes round robin
+            int port = ports[i % nodes];
+            LoadSession client = new LoadSession(user.getUserId(), friendIds[i], latency, received, errors);
+            WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+            headers.add("Cookie", login(http, port, user.getUsername()));
+            if (compression) {
+                headers.setSecWebSocketExtensions(List.of(new WebSocketExtension(WebSocketCompression.PERMESSAGE_DEFLATE)));
+            }
+            String url = sockJs
+                    ? "http://localhost:" + connectPorts[i % nodes] + "/ws"
+                    : "ws://localhost:" + connectPorts[i % nodes] + "/ws-native";
+            try {
+                stompClient.connectAsync(url, headers, client).get(30, TimeUnit.SECONDS);
+                clients.add(client);
+            } catch (Exception e) {
+                errors.incrementAndGet();
+            }
+        }
+        System.out.printf("Connected %d/%d sessions in %d ms%n", clients.size(), sessions,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart));
+
+        // Send in 10 ms ticks; the remainder is carried so low rates are still exact on average
+        ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor();
+        double perTick = rate / 100.0;
+        double[] carry = {0};
+        sender.scheduleAtFixedRate(() -> {
+            carry[0] += perTick;
+            int count = (int) carry[0];
+            carry[0] -= count;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < count; i++) {
+                LoadSession client = clients.get(random.nextInt(clients.size()));
+                try {
+                    if (client.send(random.nextInt())) {
+                        sent.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                }
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(warmup.toMillis());
+        latency.reset();
+        long sentBefore = sent.get();
+        long receivedBefore = received.get();
+        long errorsBefore = errors.get();
+        long toServerBefore = proxies.stream().mapToLong(ByteCountingProxy::bytesToServer).sum();
+        long toClientBefore = proxies.stream().mapToLong(ByteCountingProxy::bytesToClient).sum();
+        ResourceSampler resources = new ResourceSampler();
+        resources.start();
+
+        Thread.sleep(duration.toMillis());
+        sender.shutdown();
+        sender.awaitTermination(5, TimeUnit.SECONDS);
+        long sentDuring = sent.get() - sentBefore;
+        // Give in-flight messages a moment to arrive
+        Thread.sleep(2000);
+        resources.stop();
+        long toServer = proxies.stream().mapToLong(ByteCountingProxy::bytesToServer).sum() - toServerBefore;
+        long toClient = proxies.stream().mapToLong(ByteCountingProxy::bytesToClient).sum() - toClientBefore;
+
+        Histogram histogram = latency.getIntervalHistogram();
+        long receivedDuring = received.get() - receivedBefore;
+        long errorsDuring = errors.get() - errorsBefore;
+        long connected = clients.stream().filter(LoadSession::isConnected).count();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("nodes", nodes);
+        report.put("brokerMode", context.getEnvironment().getProperty("chat.broker.mode"));
+        report.put("deliveryMode", context.getEnvironment().getProperty("chat.websocket.delivery-mode", "user"));
+        report.put("persistenceMode", context.getEnvironment().getProperty("chat.persistence.mode", "sync"));
+        report.put("virtualThreads", Threading.VIRTUAL.isActive(context.getEnvironment()));
+        report.put("javaVersion", Runtime.version().feature());
+        report.put("transport", sockJs ? "sockjs" : "native");
+        report.put("compressionRequested", compression);
+        report.put("compressedSessions", contexts.stream()
+                .mapToInt(c -> c.getBean(WebSocketCompression.class).getCompressedSessions()).sum());
+        report.put("sessions", sessions);
+        report.put("connectedAtEnd", connected);
+        report.put("friendsPerUser", friends);
+        report.put("targetRate", rate);
+        report.put("durationSeconds", duration.toSeconds());
+        report.put("sent", sentDuring);
+        report.put("received", receivedDuring);
+        report.put("errors", errorsDuring);
+        report.put("throughput", receivedDuring / (double) duration.toSeconds());
+        report.put("latencyMillisP50", millis(histogram.getValueAtPercentile(50)));
+        report.put("latencyMillisP99", millis(histogram.getValueAtPercentile(99)));
+        report.put("latencyMillisP999", millis(histogram.getValueAtPercentile(99.9)));
+        report.put("latencyMillisMax", millis(histogram.getMaxValue()));
+        if (wireBytes) {
+            // Heartbeats included; per message sent (client to server) and received
+            // (server to client)
+            report.put("wireBytesToServerPerMessage", toServer / (double) Math.max(1, sentDuring));
+            report.put("wireBytesToClientPerMessage", toClient / (double) Math.max(1, receivedDuring));
+        }
+        report.putAll(resources.summary());
+        report.put("sessionsPerBusyCore", connected / Math.max(0.01, resources.busyCores()));
+
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        String json = mapper.writeValueAsString(report);
+        System.out.println(json);
+        Files.createDirectories(reportFile.toAbsolutePath().getParent());
+        Files.writeString(reportFile, json);
+        System.out.println("Report written to " + reportFile.toAbsolutePath());
+
+        clients.forEach(LoadSession::disconnect);
+        // Let the server finish its side of the disconnects before the sockets go away
+        Thread.sleep(1000);
+        stompClient.stop();
+        heartbeats.shutdown();
+        for (ByteCountingProxy proxy : proxies) {
+            proxy.close();
+        }
+        contexts.forEach(ConfigurableApplicationContext::close);
+        System.exit(0);
+    }
+
+    private static List<User> createUsers(ConfigurableApplicationContext context, int count, int friends) {
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        FriendRepository friendRepository = context.getBean(FriendRepository.class);
+        // Hash once: BCrypt per user would dominate the setup
+        String passwordHash = context.getBean(PasswordEncoder.class).encode(PASSWORD);
+        String run = Long.toString(System.currentTimeMillis(), 36);
+
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            User u = new User();
+            u.setUsername("load-" + run + "-" + i);
+            u.setEmail("load-" + run + "-" + i + "@example.com");
+            u.setPasswordHash(passwordHash);
+            users.add(u);
+        }
+        users = userRepository.saveAll(users);
+
+        // Ring graph: user i is friends with the next friends/2 users (and therefore the
+        // previous friends/2 as well), so everyone has the same number of friends
+        List<Friend> friendships = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            for (int step = 1; step <= (friends + 1) / 2; step++) {
+                User a = users.get(i);
+                User b = users.get((i + step) % count);
+                friendships.add(new Friend(a.getUserId(), b.getUserId()));
+                friendships.add(new Friend(b.getUserId(), a.getUserId()));
+            }
+        }
+        friendRepository.saveAll(friendships);
+        return users;
+    }
+
+    private static long[][] friendIds(List<User> users, int friends) {
+        int count = users.size();
+        int half = (friends + 1) / 2;
+        long[][] ids = new long[count][];
+        for (int i = 0; i < count; i++) {
+            List<Long> list = new ArrayList<>();
+            for (int step = 1; step <= half; step++) {
+                list.add(users.get((i + step) % count).getUserId());
+                list.add(users.get(Math.floorMod(i - step, count)).getUserId());
+            }
+            ids[i] = list.stream().distinct().mapToLong(Long::longValue).toArray();
+        }
+        return ids;
+    }
+
+    private static String login(HttpClient http, int port, String username) throws Exception {
+        String form = "username=" + URLEncoder.encode(username, StandardCharsets.UTF_8)
+                + "&password=" + URLEncoder.encode(PASSWORD, StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/login"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+        String location = response.headers().firstValue("Location").orElse("");
+        if (!location.endsWith("/chat")) {
+            throw new IllegalStateException("Login failed for " + username + ": " + location);
+        }
+        return response.headers().allValues("Set-Cookie").stream()
+                .filter(c -> c.startsWith("JSESSIONID="))
+                .map(c -> c.substring(0, c.indexOf(';')))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No session cookie for " + username));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * Samples process CPU load and heap usage once per second during the measured run
+     */
+    private static final class ResourceSampler {
+        private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        private final com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final List<Double> cpu = new ArrayList<>();
+        private long maxHeapUsed;
+        private long gcCountStart;
+        private long gcTimeStart;
+        private long gcCount;
+        private long gcTime;
+
+        void start() {
+            gcCountStart = gcCount();
+            gcTimeStart = gcTime();
+            executor.scheduleAtFixedRate(this::sample, 1, 1, TimeUnit.SECONDS);
+        }
+
+        void stop() throws InterruptedException {
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+            gcCount = gcCount() - gcCountStart;
+            gcTime = gcTime() - gcTimeStart;
+        }
+
+        private synchronized void sample() {
+            double load = os.getProcessCpuLoad();
+            if (load >= 0) {
+                cpu.add(load * 100);
+            }
+            maxHeapUsed = Math.max(maxHeapUsed, memory.getHeapMemoryUsage().getUsed());
+        }
+
+        // Process CPU in cores' worth, averaged over the run
+        synchronized double busyCores() {
+            return cpu.stream().mapToDouble(Double::doubleValue).average().orElse(0) / 100
+                    * os.getAvailableProcessors();
+        }
+
+        synchronized Map<String, Object> summary() {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("cpuPercentAvg", cpu.stream().mapToDouble(Double::doubleValue).average().orElse(0));
+            summary.put("cpuPercentMax", cpu.stream().mapToDouble(Double::doubleValue).max().orElse(0));
+            summary.put("availableProcessors", os.getAvailableProcessors());
+            summary.put("heapUsedMaxMb", maxHeapUsed / (1024 * 1024));
+            summary.put("heapMaxMb", memory.getHeapMemoryUsage().getMax() / (1024 * 1024));
+            summary.put("gcCount", gcCount);
+            summary.put("gcTimeMillis", gcTime);
+            return summary;
+        }
+
+        private static long gcCount() {
+            return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                    .mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+        }
+
+        private static long gcTime() {
+            return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                    .mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.chat.load;
+
+import com.chat.dto.MessageDto;
+import com.chat.dto.MessageView;
+import org.HdrHistogram.Recorder;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One simulated browser tab: a logged-in STOMP session of one user. Messages carry the
+ * send time (System.nanoTime, same JVM as the receiver) in their clientMessageId, so
+ * the receiving session can record send-to-receive latency.
+ */
+class LoadSession extends StompSessionHandlerAdapter {
+
+    static final String TIMESTAMP_PREFIX = "t";
+
+    private final long userId;
+    private final long[] friendIds;
+    private final Recorder latency;
+    private final AtomicLong received;
+    private final AtomicLong errors;
+    private volatile StompSession session;
+
+    LoadSession(long userId, long[] friendIds, Recorder latency, AtomicLong received, AtomicLong errors) {
+        this.userId = userId;
+        this.friendIds = friendIds;
+        this.latency = latency;
+        this.received = received;
+        this.errors = errors;
+    }
+
+    @Override
+    public void afterConnected(StompSession session, StompHeaders connectedHeaders) {
+        this.session = session;
+        session.subscribe("/user/queue/messages", new Handler(MessageView.class) {
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                onMessage((MessageView) payload);
+            }
+        });
+        session.subscribe("/topic/messages", new Handler(MessageView.class) {
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                onMessage((MessageView) payload);
+            }
+        });
+        session.subscribe("/user/queue/errors", new Handler(Map.class) {
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                errors.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Send one message to a random friend
+     * @param pick - Random number used to choose the friend
+     * @return false if the session is not connected or has no friends
+     */
+    boolean send(int pick) {
+        StompSession current = session;
+        if (current == null || !current.isConnected() || friendIds.length == 0) {
+            return false;
+        }
+        MessageDto dto = new MessageDto();
+        dto.senderId = userId;
+        dto.receiverId = friendIds[Math.floorMod(pick, friendIds.length)];
+        dto.content = "load test message";
+        dto.clientMessageId = TIMESTAMP_PREFIX + System.nanoTime();
+        current.send("/app/chat", dto);
+        return true;
+    }
+
+    boolean isConnected() {
+        StompSession current = session;
+        return current != null && current.isConnected();
+    }
+
+    void disconnect() {
+        StompSession current = session;
+        if (current != null && current.isConnected()) {
+            current.disconnect();
+        }
+    }
+
+    private void onMessage(MessageView message) {
+        // Only the receiver's copy counts; the sender's echo and other users' broadcasts do not
+        if (message.receiverId() == null || message.receiverId() != userId || message.clientMessageId() == null
+                || !message.clientMessageId().startsWith(TIMESTAMP_PREFIX)) {
+            return;
+        }
+        long sentAt = Long.parseLong(message.clientMessageId().substring(TIMESTAMP_PREFIX.length()));
+        latency.recordValue(Math.max(0, System.nanoTime() - sentAt));
+        received.incrementAndGet();
+    }
+
+    @Override
+    public void handleException(StompSession session, StompCommand command, StompHeaders headers,
+                                byte[] payload, Throwable exception) {
+        errors.incrementAndGet();
+    }
+
+    @Override
+    public void handleTransportError(StompSession session, Throwable exception) {
+        errors.incrementAndGet();
+    }
+
+    private abstract static class Handler implements org.springframework.messaging.simp.stomp.StompFrameHandler {
+        private final Type type;
+
+        Handler(Type type) {
+            this.type = type;
+        }
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return type;
+        }
+    }
+}
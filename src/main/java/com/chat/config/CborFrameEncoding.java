@@ -0,0 +1,259 @@
+package com.chat.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Opt-in CBOR payloads for STOMP sessions (chat.websocket.cbor.enabled). A client that
+ * sends "accept:application/cbor" on CONNECT gets its JSON MESSAGE frames re-encoded as
+ * CBOR with content-type application/cbor, written as binary WebSocket frames. Clients
+ * may also SEND application/cbor. SockJS carries text only, so its sessions stay JSON.
+ *
+ * The payload is transcoded token by token from the JSON the broker already holds, so
+ * every other session still shares the one serialization; fan-out of one message to
+ * many CBOR sessions transcodes it once.
+ */
+@Component
+public class CborFrameEncoding implements ChannelInterceptor, WebSocketHandlerDecoratorFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(CborFrameEncoding.class);
+
+    public static final MimeType APPLICATION_CBOR = MimeType.valueOf("application/cbor");
+    /** CONNECT header a client uses to ask for CBOR */
+    public static final String ACCEPT_HEADER = "accept";
+    // Session attribute set on SockJS sessions, which cannot carry binary frames
+    static final String TEXT_ONLY_ATTRIBUTE = "chatTextOnlyTransport";
+
+    private static final byte[] CBOR_CONTENT_TYPE = ("\ncontent-type:" + APPLICATION_CBOR)
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private final boolean enabled;
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper;
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+    // The broker hands every subscriber of a message the same payload array
+    private volatile Transcoded last;
+
+    private final Counter frames;
+    private final DistributionSummary jsonBytes;
+    private final DistributionSummary cborBytes;
+
+    public CborFrameEncoding(ObjectMapper objectMapper,
+                             MeterRegistry registry,
+                             @Value("${chat.websocket.cbor.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+        this.jsonMapper = objectMapper;
+        // Outbound payloads are copied token by token, so this only reads what clients SEND
+        this.cborMapper = CBORMapper.builder()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .findAndAddModules()
+                .build();
+        this.frames = Counter.builder("chat.websocket.cbor.frames")
+                .description("MESSAGE frames sent to sessions as CBOR")
+                .register(registry);
+        this.jsonBytes = payloadSize(registry, "json");
+        this.cborBytes = payloadSize(registry, "cbor");
+    }
+
+    private static DistributionSummary payloadSize(MeterRegistry registry, String encoding) {
+        return DistributionSummary.builder("chat.websocket.cbor.payload")
+                .description("Size of transcoded payloads before (json) and after (cbor)")
+                .baseUnit("bytes")
+                .tag("encoding", encoding)
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether a session asked for, and can receive, CBOR payloads
+     * @param sessionId - STOMP session id
+     */
+    public boolean isCborSession(String sessionId) {
+        return cborSessions.contains(sessionId);
+    }
+
+    /**
+     * Converter for application/cbor payloads clients SEND. Strict, so it never takes
+     * frames without a content type from the JSON converter.
+     */
+    public MessageConverter inboundConverter() {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(APPLICATION_CBOR);
+        converter.setObjectMapper(cborMapper);
+        converter.setStrictContentTypeMatch(true);
+        return converter;
+    }
+
+    @EventListener
+    public void onConnect(SessionConnectEvent event) {
+        if (!enabled) {
+            return;
+        }
+        MessageHeaders headers = event.getMessage().getHeaders();
+        String accept = NativeMessageHeaderAccessor.getFirstNativeHeader(ACCEPT_HEADER, headers);
+        if (accept == null || !accept.contains(APPLICATION_CBOR.toString())) {
+            return;
+        }
+        Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (sessionId != null && (attributes == null || !attributes.containsKey(TEXT_ONLY_ATTRIBUTE))) {
+            cborSessions.add(sessionId);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        cborSessions.remove(event.getSessionId());
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        if (cborSessions.isEmpty()
+                || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                || !(message.getPayload() instanceof byte[] json)
+                || !cborSessions.contains(SimpMessageHeaderAccessor.getSessionId(headers))
+                || !MimeTypeUtils.APPLICATION_JSON.equalsTypeAndSubtype(contentType(headers))) {
+            return message;
+        }
+        byte[] cbor;
+        try {
+            cbor = transcode(json);
+        } catch (IOException e) {
+            log.warn("Sending JSON, could not re-encode payload as CBOR: {}", e.getMessage());
+            return message;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setContentType(APPLICATION_CBOR);
+        frames.increment();
+        return MessageBuilder.createMessage(cbor, accessor.getMessageHeaders());
+    }
+
+    private static MimeType contentType(MessageHeaders headers) {
+        Object value = headers.get(MessageHeaders.CONTENT_TYPE);
+        if (value instanceof MimeType mimeType) {
+            return mimeType;
+        }
+        return value == null ? null : MimeTypeUtils.parseMimeType(value.toString());
+    }
+
+    byte[] transcode(byte[] json) throws IOException {
+        Transcoded cached = last;
+        if (cached != null && cached.json == json) {
+            return cached.cbor;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = jsonMapper.getFactory().createParser(json);
+             JsonGenerator generator = cborMapper.getFactory().createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        byte[] cbor = out.toByteArray();
+        jsonBytes.record(json.length);
+        cborBytes.record(cbor.length);
+        last = new Transcoded(json, cbor);
+        return cbor;
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                if (session instanceof SockJsSession) {
+                    session.getAttributes().put(TEXT_ONLY_ATTRIBUTE, Boolean.TRUE);
+                    super.afterConnectionEstablished(session);
+                } else {
+                    super.afterConnectionEstablished(new BinaryFrameSession(session));
+                }
+            }
+        };
+    }
+
+    private record Transcoded(byte[] json, byte[] cbor) {
+    }
+
+    /**
+     * Spring writes every STOMP frame of a non-octet-stream content type as a text
+     * message; CBOR frames are not valid UTF-8, so they go out as binary messages.
+     */
+    private final class BinaryFrameSession extends WebSocketSessionDecorator {
+
+        BinaryFrameSession(WebSocketSession session) {
+            super(session);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            if (message instanceof TextMessage text && isCborSession(getId())) {
+                byte[] frame = text.asBytes();
+                if (hasCborContentType(frame)) {
+                    super.sendMessage(new BinaryMessage(frame, text.isLast()));
+                    return;
+                }
+            }
+            super.sendMessage(message);
+        }
+    }
+
+    // Scans the STOMP headers, which end at the first empty line
+    static boolean hasCborContentType(byte[] frame) {
+        int end = 0;
+        while (end + 1 < frame.length && !(frame[end] == '\n' && frame[end + 1] == '\n')) {
+            end++;
+        }
+        outer:
+        for (int i = 0; i + CBOR_CONTENT_TYPE.length <= end + 1; i++) {
+            for (int j = 0; j < CBOR_CONTENT_TYPE.length; j++) {
+                if (frame[i + j] != CBOR_CONTENT_TYPE[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
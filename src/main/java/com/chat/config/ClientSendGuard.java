@@ -0,0 +1,49 @@
+package com.chat.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Clients may only SEND to the application (/app/...). A SEND straight to a broker
+ * destination such as /user/{name}/queue/messages or /topic/... would reach the
+ * receivers without the controller setting the sender from the session or checking
+ * that the two are friends, so such frames are dropped on the inbound channel.
+ */
+@Component
+public class ClientSendGuard implements ChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientSendGuard.class);
+
+    static final String APPLICATION_PREFIX = "/app/";
+
+    private final Counter rejected;
+
+    public ClientSendGuard(MeterRegistry registry) {
+        this.rejected = Counter.builder("chat.websocket.rejected-sends")
+                .description("Client SEND frames dropped for addressing the broker directly")
+                .register(registry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination != null && destination.startsWith(APPLICATION_PREFIX)) {
+            return message;
+        }
+        rejected.increment();
+        log.debug("Dropped SEND to {} from session {}", destination,
+                SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+        return null;
+    }
+}
@@ -0,0 +1,105 @@
+package com.chat.config;
+
+import com.chat.service.ClusterBus;
+import com.chat.service.ClusterMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Connects the local broker channel to the {@link ClusterBus} (chat.broker.mode=bus).
+ * Messages the application sends to the broker are published to the other nodes as
+ * they are, before user destinations are resolved, so each node resolves
+ * /user/{name}/... against its own sessions. Messages from other nodes are sent to the
+ * local broker channel marked as remote, so they are never published again.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.broker.mode", havingValue = "bus")
+public class ClusterBridge implements ChannelInterceptor {
+
+    static final String REMOTE_ORIGIN_HEADER = "chatClusterOrigin";
+    private static final String CONTENT_TYPE_HEADER = "content-type";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ClusterBus bus;
+    private final ObjectProvider<MessageChannel> brokerChannel;
+    private final Counter published;
+    private final Counter received;
+
+    public ClusterBridge(ClusterBus bus,
+                         @Qualifier("brokerChannel") ObjectProvider<MessageChannel> brokerChannel,
+                         MeterRegistry registry) {
+        this.bus = bus;
+        this.brokerChannel = brokerChannel;
+        this.published = Counter.builder("chat.cluster.messages").tag("direction", "out").register(registry);
+        this.received = Counter.builder("chat.cluster.messages").tag("direction", "in").register(registry);
+        bus.subscribe(this::deliverRemote);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                || headers.containsKey(REMOTE_ORIGIN_HEADER)
+                // Already resolved from /user/...: every node resolves the original itself
+                || headers.containsKey(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION)
+                || !(message.getPayload() instanceof byte[] payload)) {
+            return message;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if (destination == null) {
+            return message;
+        }
+
+        Map<String, String> forwarded = new LinkedHashMap<>();
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        if (contentType != null) {
+            forwarded.put(CONTENT_TYPE_HEADER, contentType.toString());
+        }
+        if (headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS) instanceof Map<?, ?> nativeHeaders) {
+            nativeHeaders.forEach((name, values) -> {
+                if (values instanceof List<?> list && !list.isEmpty()) {
+                    forwarded.putIfAbsent(name.toString(), String.valueOf(list.get(0)));
+                }
+            });
+        }
+        bus.publish(new ClusterMessage(nodeId, destination, forwarded, payload));
+        published.increment();
+        return message;
+    }
+
+    private void deliverRemote(ClusterMessage message) {
+        if (nodeId.equals(message.origin())) {
+            return;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(message.destination());
+        message.headers().forEach((name, value) -> {
+            if (CONTENT_TYPE_HEADER.equals(name)) {
+                accessor.setContentType(MimeTypeUtils.parseMimeType(value));
+            } else {
+                accessor.setNativeHeader(name, value);
+            }
+        });
+        accessor.setHeader(REMOTE_ORIGIN_HEADER, message.origin());
+        received.increment();
+        brokerChannel.getObject().send(MessageBuilder.createMessage(message.payload(), accessor.getMessageHeaders()));
+    }
+}
@@ -0,0 +1,16 @@
+package com.chat.config;
+
+import com.chat.entity.SnowflakeIdGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class IdGeneratorConfig {
+
+    /**
+     * Every application instance needs its own node id (0-1023) so ids never collide
+     */
+    public IdGeneratorConfig(@Value("${chat.id.node-id:0}") long nodeId) {
+        SnowflakeIdGenerator.setNodeId(nodeId);
+    }
+}
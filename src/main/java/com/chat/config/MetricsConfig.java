@@ -0,0 +1,58 @@
+package com.chat.config;
+
+import com.chat.service.PresenceService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Gauges for the STOMP message channels and connected sessions. Timers and counters of
+ * the send, history and friend paths are registered by the services themselves.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder stompChannelMetrics(@Qualifier("clientInboundChannelExecutor") Executor inbound,
+                                           @Qualifier("clientOutboundChannelExecutor") Executor outbound,
+                                           @Qualifier("brokerChannelExecutor") Executor broker) {
+        return registry -> {
+            bindExecutor(registry, "inbound", inbound);
+            bindExecutor(registry, "outbound", outbound);
+            bindExecutor(registry, "broker", broker);
+        };
+    }
+
+    @Bean
+    public MeterBinder sessionMetrics(PresenceService presenceService) {
+        return registry -> {
+            Gauge.builder("chat.websocket.sessions", presenceService, PresenceService::getSessionCount)
+                    .description("Connected STOMP sessions")
+                    .register(registry);
+            Gauge.builder("chat.users.online", presenceService, PresenceService::getOnlineUserCount)
+                    .description("Users with at least one connected session")
+                    .register(registry);
+        };
+    }
+
+    private static void bindExecutor(MeterRegistry registry, String channel, Executor channelExecutor) {
+        // Virtual-thread executors have no pool or queue to report
+        if (!(channelExecutor instanceof ThreadPoolTaskExecutor executor)) {
+            return;
+        }
+        Gauge.builder("chat.stomp.channel.queue", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+                .description("Messages waiting for a channel thread")
+                .tag("channel", channel)
+                .register(registry);
+        Gauge.builder("chat.stomp.channel.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("Channel threads busy handling messages")
+                .tag("channel", channel)
+                .register(registry);
+    }
+}
@@ -2,6 +2,7 @@ package com.chat.config;
 
   import com.chat.service.ChatUserDetailsService;
   import com.chat.service.CaptchaService;
+  import org.springframework.core.env.Environment;
   import org.springframework.context.annotation.Bean;
   import org.springframework.context.annotation.Configuration;
   import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
@@ -22,10 +23,15 @@ package com.chat.config;
   public class SecurityConfig {
       private final ChatUserDetailsService chatUserDetailsService;
       private final CaptchaService captchaService;
+      private final Environment environment;
+      // Port of the separate actuator server (management.server.port), once it has started
+      private volatile int managementPort = -1;
 
-      public SecurityConfig(ChatUserDetailsService chatUserDetailsService, CaptchaService captchaService) {
+      public SecurityConfig(ChatUserDetailsService chatUserDetailsService, CaptchaService captchaService,
+                            Environment environment) {
           this.chatUserDetailsService = chatUserDetailsService;
           this.captchaService = captchaService;
+          this.environment = environment;
       }
 
       @Bean
@@ -38,8 +44,12 @@ package com.chat.config;
                     "/login",           // login form
                     "/register",        // registration form
                     "/forgot-password", // forgot-password form
-                    "/css/**", "/js/**" // static assets
+                    "/css/**", "/js/**", // static assets
+                    "/actuator/health"  // load balancer
                 ).permitAll()
+                // Metrics scraper: open on the management port only, login required on the app port
+                .requestMatchers(request -> request.getLocalPort() == managementPort())
+                .permitAll()
                 .anyRequest().authenticated()
             )
             .userDetailsService(chatUserDetailsService)
@@ -59,6 +69,16 @@ package com.chat.config;
           return http.build();
       }
       
+      // Set by Spring Boot once the management server is up
+      private int managementPort() {
+          int port = managementPort;
+          if (port < 0 && environment.containsProperty("management.server.port")) {
+              port = environment.getProperty("local.management.port", Integer.class, -1);
+              managementPort = port;
+          }
+          return port;
+      }
+
       @Bean
       public AuthenticationFailureHandler customAuthenticationFailureHandler() {
           return new SimpleUrlAuthenticationFailureHandler() {
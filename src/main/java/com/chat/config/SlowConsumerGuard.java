@@ -0,0 +1,207 @@
+package com.chat.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps one slow client from backing up the outbound channel. Every MESSAGE frame routed
+ * to a session counts as pending until it has been written to the socket; once a session
+ * has chat.websocket.slow-consumer.max-pending frames outstanding, further frames are
+ * handled by chat.websocket.slow-consumer.policy:
+ *   drop       - discard the frame
+ *   disconnect - close the session so the client reconnects and reloads state
+ *   coalesce   - frames carrying a coalesce-key header (presence updates) are held back
+ *                and only the newest per key is sent once the session has caught up;
+ *                other frames are still sent
+ * Spring's send-time and send-buffer limits remain the hard stop behind this.
+ */
+@Component
+public class SlowConsumerGuard implements ChannelInterceptor, WebSocketHandlerDecoratorFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(SlowConsumerGuard.class);
+
+    /** Native header marking frames where only the latest one per key matters */
+    public static final String COALESCE_KEY_HEADER = "coalesce-key";
+
+    public enum Policy { DROP, DISCONNECT, COALESCE }
+
+    private final Policy policy;
+    private final int maxPending;
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+
+    private final Counter dropped;
+    private final Counter disconnected;
+    private final Counter coalesced;
+    private final Counter terminated;
+
+    public SlowConsumerGuard(MeterRegistry registry,
+                             @Value("${chat.websocket.slow-consumer.policy:drop}") String policy,
+                             @Value("${chat.websocket.slow-consumer.max-pending:256}") int maxPending) {
+        this.policy = Policy.valueOf(policy.trim().toUpperCase(Locale.ROOT));
+        this.maxPending = Math.max(1, maxPending);
+        this.dropped = counter(registry, "drop");
+        this.disconnected = counter(registry, "disconnect");
+        this.coalesced = counter(registry, "coalesce");
+        this.terminated = counter(registry, "terminate");
+    }
+
+    private static Counter counter(MeterRegistry registry, String action) {
+        return Counter.builder("chat.websocket.slow.consumer")
+                .description("Frames or sessions handled by the slow-consumer policy; terminate counts sessions closed by the send limits")
+                .tag("action", action)
+                .register(registry);
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Frames routed to the session and not yet written to its socket
+     * @param sessionId - STOMP session id
+     * @return Pending frame count, 0 for unknown sessions
+     */
+    public int getPending(String sessionId) {
+        SessionState state = sessions.get(sessionId);
+        return state == null ? 0 : state.pending.get();
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        SessionState state = sessionId == null ? null : sessions.get(sessionId);
+        if (state == null) {
+            return message;
+        }
+        // CONNECTED, receipts, heartbeats and errors always go out
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE
+                || state.pending.get() < maxPending) {
+            state.pending.incrementAndGet();
+            return message;
+        }
+
+        switch (policy) {
+            case DROP -> {
+                dropped.increment();
+                return null;
+            }
+            case DISCONNECT -> {
+                disconnected.increment();
+                close(state.session);
+                return null;
+            }
+            default -> {
+                String key = coalesceKey(message);
+                if (key == null) {
+                    state.pending.incrementAndGet();
+                    return message;
+                }
+                state.channel = channel;
+                state.coalesced.put(key, message);
+                coalesced.increment();
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                SessionState state = new SessionState(session);
+                sessions.put(session.getId(), state);
+                super.afterConnectionEstablished(new CountingSession(session, state));
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                // Spring closes sessions that exceed the send-time or send-buffer limit with this status
+                if (CloseStatus.SESSION_NOT_RELIABLE.equals(closeStatus)) {
+                    terminated.increment();
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    private static String coalesceKey(Message<?> message) {
+        return NativeMessageHeaderAccessor.getFirstNativeHeader(COALESCE_KEY_HEADER, message.getHeaders());
+    }
+
+    private static void close(WebSocketSession session) {
+        try {
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("Slow consumer"));
+        } catch (IOException e) {
+            log.debug("Failed to close slow session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    private static final class SessionState {
+        final WebSocketSession session;
+        final AtomicInteger pending = new AtomicInteger();
+        final Map<String, Message<?>> coalesced = new ConcurrentHashMap<>();
+        volatile MessageChannel channel;
+
+        SessionState(WebSocketSession session) {
+            this.session = session;
+        }
+
+        // Called after each write; once the session has caught up, release the held-back frames
+        void written() {
+            int left = pending.updateAndGet(p -> p > 0 ? p - 1 : 0);
+            if (left > 0 || coalesced.isEmpty() || channel == null) {
+                return;
+            }
+            for (String key : coalesced.keySet()) {
+                Message<?> held = coalesced.remove(key);
+                if (held != null) {
+                    channel.send(held);
+                }
+            }
+        }
+    }
+
+    // Sits below Spring's concurrent session decorator, so it sees each frame as it is written
+    private static final class CountingSession extends WebSocketSessionDecorator {
+        private final SessionState state;
+
+        CountingSession(WebSocketSession session, SessionState state) {
+            super(session);
+            this.state = state;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            try {
+                super.sendMessage(message);
+            } finally {
+                state.written();
+            }
+        }
+    }
+}
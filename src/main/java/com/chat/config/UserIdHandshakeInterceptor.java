@@ -0,0 +1,35 @@
+package com.chat.config;
+
+import com.chat.service.ChatUserDetails;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.security.Principal;
+import java.util.Map;
+
+/**
+ * Copies the authenticated user's id into the STOMP session attributes during the
+ * WebSocket handshake, so message handlers know the sender without a users query.
+ */
+public class UserIdHandshakeInterceptor implements HandshakeInterceptor {
+
+    public static final String USER_ID_ATTRIBUTE = "userId";
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        Principal principal = request.getPrincipal();
+        if (principal instanceof Authentication auth && auth.getPrincipal() instanceof ChatUserDetails user) {
+            attributes.put(USER_ID_ATTRIBUTE, user.getUserId());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
@@ -0,0 +1,185 @@
+package com.chat.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.websocket.Decoder;
+import jakarta.websocket.Encoder;
+import jakarta.websocket.Extension;
+import jakarta.websocket.HandshakeResponse;
+import jakarta.websocket.server.HandshakeRequest;
+import jakarta.websocket.server.ServerEndpointConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.server.HandshakeHandler;
+import org.springframework.web.socket.server.standard.StandardWebSocketUpgradeStrategy;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * permessage-deflate (RFC 7692) on the WebSocket endpoints, native and SockJS alike. The
+ * container compresses every message of a session that negotiated it and keeps a zlib
+ * deflater and inflater per session (a few hundred KB of native memory), so:
+ *   chat.websocket.compression.enabled      - false never negotiates it
+ *   chat.websocket.compression.max-sessions - compressed sessions at a time; handshakes
+ *                                             beyond it connect uncompressed (soft limit,
+ *                                             concurrent handshakes may overshoot slightly)
+ * The container offers the extension whenever the client asks, whatever the handshake
+ * handler selects, so it is withheld at the container's own negotiation step.
+ */
+@Component
+public class WebSocketCompression implements WebSocketHandlerDecoratorFactory {
+
+    public static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private final boolean enabled;
+    private final int maxSessions;
+    private final Set<String> compressedSessions = ConcurrentHashMap.newKeySet();
+    private final Counter declined;
+
+    public WebSocketCompression(MeterRegistry registry,
+                                @Value("${chat.websocket.compression.enabled:true}") boolean enabled,
+                                @Value("${chat.websocket.compression.max-sessions:10000}") int maxSessions) {
+        this.enabled = enabled;
+        this.maxSessions = Math.max(0, maxSessions);
+        Gauge.builder("chat.websocket.compression.sessions", compressedSessions, Set::size)
+                .description("Open WebSocket sessions using permessage-deflate")
+                .register(registry);
+        this.declined = Counter.builder("chat.websocket.compression.declined")
+                .description("Handshakes that asked for permessage-deflate and connected uncompressed")
+                .register(registry);
+    }
+
+    public int getCompressedSessions() {
+        return compressedSessions.size();
+    }
+
+    /**
+     * Handshake handler for the STOMP endpoints
+     */
+    public HandshakeHandler handshakeHandler() {
+        return new DefaultHandshakeHandler(new StandardWebSocketUpgradeStrategy() {
+            @Override
+            protected void upgradeHttpToWebSocket(HttpServletRequest request, HttpServletResponse response,
+                                                  ServerEndpointConfig endpointConfig,
+                                                  Map<String, String> pathParams) throws Exception {
+                boolean compress = enabled && compressedSessions.size() < maxSessions;
+                super.upgradeHttpToWebSocket(request, response,
+                        compress ? endpointConfig : new WithoutDeflate(endpointConfig), pathParams);
+            }
+        });
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                if (session.getExtensions().stream().anyMatch(e -> PERMESSAGE_DEFLATE.equals(e.getName()))) {
+                    compressedSessions.add(session.getId());
+                }
+                super.afterConnectionEstablished(session);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                compressedSessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    /**
+     * The endpoint config of one handshake, negotiating everything but permessage-deflate
+     */
+    private final class WithoutDeflate extends ServerEndpointConfig.Configurator implements ServerEndpointConfig {
+        private final ServerEndpointConfig config;
+        private final ServerEndpointConfig.Configurator configurator;
+
+        WithoutDeflate(ServerEndpointConfig config) {
+            this.config = config;
+            this.configurator = config.getConfigurator();
+        }
+
+        @Override
+        public List<Extension> getNegotiatedExtensions(List<Extension> installed, List<Extension> requested) {
+            if (requested.stream().anyMatch(e -> PERMESSAGE_DEFLATE.equals(e.getName()))) {
+                declined.increment();
+            }
+            return configurator.getNegotiatedExtensions(installed.stream()
+                    .filter(e -> !PERMESSAGE_DEFLATE.equals(e.getName()))
+                    .toList(), requested);
+        }
+
+        @Override
+        public String getNegotiatedSubprotocol(List<String> supported, List<String> requested) {
+            return configurator.getNegotiatedSubprotocol(supported, requested);
+        }
+
+        @Override
+        public boolean checkOrigin(String originHeaderValue) {
+            return configurator.checkOrigin(originHeaderValue);
+        }
+
+        @Override
+        public void modifyHandshake(ServerEndpointConfig sec, HandshakeRequest request, HandshakeResponse response) {
+            configurator.modifyHandshake(sec, request, response);
+        }
+
+        @Override
+        public <T> T getEndpointInstance(Class<T> endpointClass) throws InstantiationException {
+            return configurator.getEndpointInstance(endpointClass);
+        }
+
+        @Override
+        public Class<?> getEndpointClass() {
+            return config.getEndpointClass();
+        }
+
+        @Override
+        public String getPath() {
+            return config.getPath();
+        }
+
+        @Override
+        public List<String> getSubprotocols() {
+            return config.getSubprotocols();
+        }
+
+        @Override
+        public List<Extension> getExtensions() {
+            return config.getExtensions();
+        }
+
+        @Override
+        public ServerEndpointConfig.Configurator getConfigurator() {
+            return this;
+        }
+
+        @Override
+        public List<Class<? extends Encoder>> getEncoders() {
+            return config.getEncoders();
+        }
+
+        @Override
+        public List<Class<? extends Decoder>> getDecoders() {
+            return config.getDecoders();
+        }
+
+        @Override
+        public Map<String, Object> getUserProperties() {
+            return config.getUserProperties();
+        }
+    }
+}
@@ -1,21 +1,228 @@
 package com.chat.config;
 
+import com.chat.service.PresenceService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+import java.util.List;
+
+/**
+ * STOMP over WebSocket: /ws-native for plain WebSocket clients and /ws with SockJS
+ * fallbacks, both able to negotiate permessage-deflate ({@link WebSocketCompression}).
+ * chat.broker.mode picks the broker: the in-memory simple broker (one node), a relay to
+ * an external STOMP broker such as RabbitMQ, or the simple broker on every node joined
+ * by a {@link com.chat.service.ClusterBus}. Channel pools, frame size and per-session
+ * send limits are set from chat.websocket.* so a burst or a slow client cannot grow
+ * queues without bound; {@link SlowConsumerGuard} decides what happens to a session
+ * that falls behind.
+ */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+
+    // Looked up lazily: PresenceService needs the messaging template this class helps build
+    private final ObjectProvider<PresenceService> presenceService;
+    private final SlowConsumerGuard slowConsumerGuard;
+    private final WebSocketSessionRegistry sessionRegistry;
+    private final TaskScheduler heartbeatScheduler;
+    private final ObjectProvider<ClusterBridge> clusterBridge;
+    private final ObjectMapper objectMapper;
+    private final CborFrameEncoding cborFrameEncoding;
+    private final WebSocketCompression compression;
+    private final ClientSendGuard clientSendGuard;
+    private final boolean virtualThreads;
+
+    // simple: in-memory broker, single node; relay: external STOMP broker; bus: simple
+    // broker on every node plus node-to-node fan-out (ClusterBridge)
+    @Value("${chat.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${chat.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${chat.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${chat.broker.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${chat.broker.relay.passcode:guest}")
+    private String relayPasscode;
+
+    @Value("${chat.websocket.heartbeat.server-ms:10000}")
+    private long serverHeartbeatMs;
+
+    @Value("${chat.websocket.heartbeat.client-ms:10000}")
+    private long clientHeartbeatMs;
+
+    @Value("${chat.websocket.inbound.core-pool-size:8}")
+    private int inboundCorePoolSize;
+
+    @Value("${chat.websocket.inbound.max-pool-size:32}")
+    private int inboundMaxPoolSize;
+
+    @Value("${chat.websocket.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+
+    @Value("${chat.websocket.outbound.core-pool-size:8}")
+    private int outboundCorePoolSize;
+
+    @Value("${chat.websocket.outbound.max-pool-size:32}")
+    private int outboundMaxPoolSize;
+
+    @Value("${chat.websocket.outbound.queue-capacity:10000}")
+    private int outboundQueueCapacity;
+
+    @Value("${chat.websocket.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    @Value("${chat.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${chat.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    public WebSocketConfig(ObjectProvider<PresenceService> presenceService,
+                           SlowConsumerGuard slowConsumerGuard,
+                           WebSocketSessionRegistry sessionRegistry,
+                           @Lazy @Qualifier("messageBrokerTaskScheduler") TaskScheduler heartbeatScheduler,
+                           ObjectProvider<ClusterBridge> clusterBridge,
+                           ObjectMapper objectMapper,
+                           CborFrameEncoding cborFrameEncoding,
+                           WebSocketCompression compression,
+                           ClientSendGuard clientSendGuard,
+                           Environment environment) {
+        this.presenceService = presenceService;
+        this.slowConsumerGuard = slowConsumerGuard;
+        this.sessionRegistry = sessionRegistry;
+        this.heartbeatScheduler = heartbeatScheduler;
+        this.clusterBridge = clusterBridge;
+        this.objectMapper = objectMapper;
+        this.cborFrameEncoding = cborFrameEncoding;
+        this.compression = compression;
+        this.clientSendGuard = clientSendGuard;
+        // spring.threads.virtual.enabled=true on Java 21+
+        this.virtualThreads = Threading.VIRTUAL.isActive(environment);
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic");
+        // "/topic" carries the legacy broadcast mode, "/queue" backs per-user destinations
+        if ("relay".equals(brokerMode)) {
+            // Heartbeats are negotiated between the clients and the external broker
+            config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode)
+                    // Users connected to other nodes: share the user registry and pass on
+                    // messages for users that are not connected here
+                    .setUserRegistryBroadcast("/topic/user-registry")
+                    .setUserDestinationBroadcast("/topic/unresolved-user");
+        } else {
+            // Heartbeats both ways: the broker sends one every server-ms and drops a session
+            // that negotiated client heartbeats but stays silent for three intervals
+            config.enableSimpleBroker("/topic", "/queue")
+                    .setHeartbeatValue(new long[] {serverHeartbeatMs, clientHeartbeatMs})
+                    .setTaskScheduler(heartbeatScheduler);
+            ClusterBridge bridge = clusterBridge.getIfAvailable();
+            if (bridge != null) {
+                config.configureBrokerChannel().interceptors(bridge);
+            }
+        }
         config.setApplicationDestinationPrefixes("/app");
+        config.setUserDestinationPrefix("/user");
     }
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
-        registry.addEndpoint("/ws").withSockJS();
+        // No SockJS info request, session path or message framing; what browsers use first
+        registry.addEndpoint("/ws-native")
+                .setHandshakeHandler(compression.handshakeHandler())
+                .addInterceptors(new UserIdHandshakeInterceptor());
+        registry.addEndpoint("/ws")
+                .setHandshakeHandler(compression.handshakeHandler())
+                .addInterceptors(new UserIdHandshakeInterceptor())
+                .withSockJS();
+    }
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        if (virtualThreads) {
+            // One virtual thread per inbound frame; the Hikari pool bounds how many reach the database
+            registration.executor(new VirtualThreadTaskExecutor("ws-inbound-"));
+        } else {
+            // Once the queue is full, further frames are rejected instead of queued
+            registration.taskExecutor()
+                    .corePoolSize(inboundCorePoolSize)
+                    .maxPoolSize(inboundMaxPoolSize)
+                    .queueCapacity(inboundQueueCapacity);
+        }
+        // Every inbound frame, heartbeats included, counts as activity for presence; then
+        // SENDs that bypass the application are dropped
+        registration.interceptors(new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+                if (sessionId != null) {
+                    presenceService.getObject().touch(sessionId);
+                }
+                return message;
+            }
+        }, clientSendGuard);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(outboundCorePoolSize)
+                .maxPoolSize(outboundMaxPoolSize)
+                .queueCapacity(outboundQueueCapacity);
+        registration.interceptors(slowConsumerGuard, cborFrameEncoding);
+    }
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // The defaults, except that JSON goes through the application's ObjectMapper, the
+        // one the HTTP API uses, instead of a second instance configured on its own
+        messageConverters.add(new StringMessageConverter());
+        messageConverters.add(new ByteArrayMessageConverter());
+        messageConverters.add(new MappingJackson2MessageConverter(objectMapper));
+        if (cborFrameEncoding.isEnabled()) {
+            messageConverters.add(cborFrameEncoding.inboundConverter());
+        }
+        return false;
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setMessageSizeLimit(messageSizeLimit)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setSendTimeLimit(sendTimeLimitMs)
+                .addDecoratorFactory(slowConsumerGuard)
+                .addDecoratorFactory(sessionRegistry)
+                .addDecoratorFactory(cborFrameEncoding)
+                .addDecoratorFactory(compression);
     }
-}
\ No newline at end of file
+}
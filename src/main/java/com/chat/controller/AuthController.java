@@ -7,6 +7,8 @@ import jakarta.validation.Valid;
 
 import java.util.Optional;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
@@ -19,6 +21,8 @@ import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 @Controller
 public class AuthController {
 
+    private static final Logger log = LoggerFactory.getLogger(AuthController.class);
+
     private final UserService userService;
     private final CaptchaService captchaService;
 
@@ -72,47 +76,46 @@ public class AuthController {
             Model model
     ) {
         
-        System.out.println("🚀 Registration attempt for user: " + user.getUsername());
-        System.out.println("📝 CAPTCHA response received: " + (captchaResponse != null ? "Yes" : "No"));
+        log.debug("Registration attempt for user: {}", user.getUsername());
+        log.debug("CAPTCHA response received: {}", captchaResponse != null);
         
         try {
             // 1) CAPTCHA verification
             if (!captchaService.verifyCaptcha(captchaResponse)) {
-                System.out.println("❌ CAPTCHA verification failed");
+                log.debug("CAPTCHA verification failed");
                 model.addAttribute("captchaError", "Please complete the CAPTCHA verification.");
                 return "register";
             }
-            System.out.println("✅ CAPTCHA verification passed");
+            log.debug("CAPTCHA verification passed");
             
             // 2) Bean-level validation errors?
             if (bindingResult.hasErrors()) {
-                System.out.println("❌ Validation errors: " + bindingResult.getAllErrors());
+                log.debug("Validation errors: {}", bindingResult.getAllErrors());
                 return "register";
             }
 
             // 3) Duplicate username/email?
             if (userService.existsByUsername(user.getUsername())) {
-                System.out.println("❌ Username already exists: " + user.getUsername());
+                log.debug("Username already exists: {}", user.getUsername());
                 model.addAttribute("usernameError", "Username already taken");
                 return "register";
             }
             if (userService.existsByEmail(user.getEmail())) {
-                System.out.println("❌ Email already exists: " + user.getEmail());
+                log.debug("Email already exists");
                 model.addAttribute("emailError", "Email already registered");
                 return "register";
             }
             
             // 4) All good → save user
             User savedUser = userService.register(user);
-            System.out.println("✅ User registered successfully: ID=" + savedUser.getUserId() + ", Username=" + savedUser.getUsername());
+            log.debug("Registered user via form: ID={}", savedUser.getUserId());
 
             // 5) Redirect to login with a flag so we can show a success msg
             redirectAttrs.addAttribute("registered", true);
             return "redirect:/login";
             
         } catch (Exception e) {
-            System.err.println("❌ Registration failed: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Registration failed", e);
             model.addAttribute("errorMessage", "Registration failed: " + e.getMessage());
             return "register";
         }
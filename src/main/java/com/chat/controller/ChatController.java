@@ -1,30 +1,46 @@
 package com.chat.controller;
 
-import com.chat.entity.User;
+import com.chat.service.ChatUserDetails;
+import com.chat.dto.FriendSummary;
 import com.chat.service.FriendService;  // Add this import
-import com.chat.service.UserService;
+import com.chat.service.InboxService;
+import com.chat.service.PresenceService;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 @Controller
 public class ChatController {
 
-    private final UserService userService;
     private final FriendService friendService;  // Add this
+    private final PresenceService presenceService;
+    private final InboxService inboxService;
 
-    public ChatController(UserService userService, FriendService friendService) {
-        this.userService = userService;
+    public ChatController(FriendService friendService, PresenceService presenceService, InboxService inboxService) {
         this.friendService = friendService;  // Inject FriendService
+        this.presenceService = presenceService;
+        this.inboxService = inboxService;
     }
 
     @GetMapping("/chat")
-    public String chatPage(@AuthenticationPrincipal org.springframework.security.core.userdetails.User u, Model m) {
-        User user = userService.findByUsername(u.getUsername()).orElseThrow();
+    public String chatPage(@AuthenticationPrincipal ChatUserDetails user, Model m) {
+        // The id was resolved at login, no users query needed here
         m.addAttribute("username", user.getUsername());
         m.addAttribute("userId", user.getUserId());
-        m.addAttribute("friends", friendService.getFriends(user.getUserId())); // Use FriendService
+        List<FriendSummary> friends = friendService.getFriends(user.getUserId()); // Use FriendService
+        m.addAttribute("friends", friends);
+        // Live presence, the cached friend list may be older
+        m.addAttribute("onlineFriendIds", presenceService.getOnline(friends.stream()
+                .map(f -> f.userId)
+                .collect(Collectors.toList())));
+        // Unread badges for every friend from one conversation_summaries query
+        m.addAttribute("unreadCounts", inboxService.getInbox(user.getUserId()).stream()
+                .filter(e -> e.unreadCount > 0)
+                .collect(Collectors.toMap(e -> e.friendId, e -> e.unreadCount)));
         return "chat";
     }
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package com.chat.controller;
+
+import com.chat.dto.InboxEntry;
+import com.chat.service.ChatUserDetails;
+import com.chat.service.InboxService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/inbox")
+public class InboxController {
+
+    private final InboxService inboxService;
+
+    public InboxController(InboxService inboxService) {
+        this.inboxService = inboxService;
+    }
+
+    /**
+     * Every conversation of the current user with its latest message and unread count
+     * @param user - Current authenticated user
+     * @return Inbox entries, most recent conversation first
+     */
+    @GetMapping
+    public ResponseEntity<List<InboxEntry>> getInbox(@AuthenticationPrincipal ChatUserDetails user) {
+        if (user == null) {
+            return ResponseEntity.status(401).build();
+        }
+        return ResponseEntity.ok(inboxService.getInbox(user.getUserId()));
+    }
+}
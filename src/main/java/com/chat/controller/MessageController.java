@@ -1,14 +1,29 @@
 package com.chat.controller;
 
+import com.chat.dto.HistoryPage;
+import com.chat.dto.HistoryVersion;
+import com.chat.dto.MessageMapper;
+import com.chat.dto.MessageView;
 import com.chat.entity.Message;
 import com.chat.entity.User;
+import com.chat.service.ChatUserDetails;
+import com.chat.service.FriendService;
+import com.chat.service.InboxService;
 import com.chat.service.MessageService;
+import com.chat.service.ReceiptService;
 import com.chat.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.ZoneId;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,27 +31,41 @@ import java.util.Optional;
 @RequestMapping("/api/messages")
 public class MessageController {
 
+    private static final Logger log = LoggerFactory.getLogger(MessageController.class);
+
     private final MessageService messageService;
     private final UserService userService;
+    private final FriendService friendService;
+    private final ReceiptService receiptService;
+    private final InboxService inboxService;
 
-    public MessageController(MessageService messageService, UserService userService) {
+    public MessageController(MessageService messageService, UserService userService, FriendService friendService,
+                             ReceiptService receiptService, InboxService inboxService) {
         this.messageService = messageService;
         this.userService = userService;
+        this.friendService = friendService;
+        this.receiptService = receiptService;
+        this.inboxService = inboxService;
     }
 
     /**
-     * Get conversation history between current user and a friend
+     * Get conversation history between current user and a friend. Answers 304 when the
+     * client's ETag still matches the conversation.
      * @param principal - Current authenticated user
      * @param friendId - ID of the friend to get conversation with
+     * @param since - Only messages newer than this message ID (optional)
      * @return List of messages in chronological order
      */
     @GetMapping("/{friendId}")
-    public ResponseEntity<List<Message>> getMessageHistory(
+    public ResponseEntity<List<MessageView>> getMessageHistory(
             @AuthenticationPrincipal UserDetails principal,
-            @PathVariable Long friendId
+            @PathVariable Long friendId,
+            @RequestParam(required = false) Long since,
+            WebRequest request,
+            HttpServletResponse response
     ) {
         if (principal == null) {
-            System.err.println("❌ No authenticated user found");
+            log.debug("No authenticated user found");
             return ResponseEntity.status(401).build();
         }
 
@@ -45,7 +74,7 @@ public class MessageController {
             Long currentUserId = getCurrentUserIdFromPrincipal(principal);
             
             if (currentUserId == null) {
-                System.err.println("❌ Could not resolve current user ID for: " + principal.getUsername());
+                log.warn("Could not resolve current user ID for: {}", principal.getUsername());
                 return ResponseEntity.status(404).build();
             }
             /*
@@ -60,34 +89,125 @@ public class MessageController {
                 return ResponseEntity.status(404).build();
             }
             
-            // Get conversation history
-            List<Message> messages = messageService.getConversationHistory(currentUserId, friendId);
+            if (notModified(currentUserId, friendId, request, response)) {
+                return null;
+            }
             
-            //System.out.println("✅ Found " + messages.size() + " messages in conversation");
+            // Get conversation history, or just what the client is missing
+            List<Message> messages = since != null
+                    ? messageService.getConversationSince(currentUserId, friendId, since)
+                    : messageService.getConversationHistory(currentUserId, friendId);
             
-            // Debug: Print first few messages
-            for (int i = 0; i < Math.min(3, messages.size()); i++) {
-                Message msg = messages.get(i);
-                System.out.println("  Message " + (i+1) + ": " + msg.getSenderId() + " -> " + msg.getReceiverId() + ": " + msg.getContent().substring(0, Math.min(50, msg.getContent().length())));
-            }
+            //System.out.println("✅ Found " + messages.size() + " messages in conversation");
             
             //System.out.println("==============================");
             
-            return ResponseEntity.ok(messages);
+            return ResponseEntity.ok(MessageMapper.toViews(messages));
             
         } catch (Exception e) {
             //System.err.println("❌ Error loading message history: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Error loading message history", e);
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    /**
+     * Get one page of the conversation with a friend (keyset pagination)
+     * @param principal - Current authenticated user
+     * @param friendId - ID of the friend to get conversation with
+     * @param before - Only messages older than this message ID (optional)
+     * @param after - Only messages newer than this message ID (optional)
+     * @param limit - Page size, capped by the server (optional)
+     * @return Page of messages in chronological order, or 304 if unchanged
+     */
+    @GetMapping("/{friendId}/page")
+    public ResponseEntity<HistoryPage> getMessagePage(
+            @AuthenticationPrincipal UserDetails principal,
+            @PathVariable Long friendId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit,
+            WebRequest request,
+            HttpServletResponse response
+    ) {
+        if (principal == null) {
+            return ResponseEntity.status(401).build();
+        }
+
+        try {
+            Long currentUserId = getCurrentUserIdFromPrincipal(principal);
+            
+            if (currentUserId == null || !userService.userExistsById(friendId)) {
+                return ResponseEntity.status(404).build();
+            }
+            
+            if (notModified(currentUserId, friendId, request, response)) {
+                return null;
+            }
+            
+            return ResponseEntity.ok(MessageMapper.toPage(
+                    messageService.getConversationPage(currentUserId, friendId, before, after, limit)));
+            
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error loading message history", e);
             return ResponseEntity.status(500).build();
         }
     }
 
+    /**
+     * Acknowledge messages from a friend as delivered and/or read (fallback for clients
+     * without a STOMP session; applied in the next receipt batch)
+     * @param principal - Current authenticated user
+     * @param friendId - Sender of the acknowledged messages
+     * @param delivered - Highest message ID received (optional)
+     * @param read - Highest message ID read (optional)
+     * @return 202 once the acknowledgement is queued
+     */
+    @PostMapping("/{friendId}/receipts")
+    public ResponseEntity<Void> acknowledge(
+            @AuthenticationPrincipal UserDetails principal,
+            @PathVariable Long friendId,
+            @RequestParam(required = false) Long delivered,
+            @RequestParam(required = false) Long read
+    ) {
+        if (principal == null) {
+            return ResponseEntity.status(401).build();
+        }
+        Long currentUserId = getCurrentUserIdFromPrincipal(principal);
+        if (currentUserId == null) {
+            return ResponseEntity.status(404).build();
+        }
+        receiptService.acknowledge(currentUserId, friendId, delivered, read);
+        return ResponseEntity.accepted().build();
+    }
+
+    /**
+     * Check the request's validators against the conversation. Sets ETag and Last-Modified
+     * on the response, and answers 304 when the client's copy is still current.
+     * History is private and changes, so clients may store it but must revalidate.
+     * @return True if the response has been completed as 304 Not Modified
+     */
+    private boolean notModified(Long currentUserId, Long friendId, WebRequest request, HttpServletResponse response) {
+        HistoryVersion version = inboxService.getHistoryVersion(currentUserId, friendId);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
+        long lastModified = version.lastModified == null ? -1
+                : version.lastModified.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        // Weak: the same body may be sent gzip compressed or not
+        return request.checkNotModified("W/\"" + version.eTag + "\"", lastModified);
+    }
+
     /**
      * Get user ID from authenticated principal
      * @param principal - The authenticated user details
      * @return User ID or null if not found
      */
     private Long getCurrentUserIdFromPrincipal(UserDetails principal) {
+        // Resolved once at login
+        if (principal instanceof ChatUserDetails chatUser) {
+            return chatUser.getUserId();
+        }
         try {
             String username = principal.getUsername();
             Optional<User> userOpt = userService.findByUsername(username);
@@ -134,6 +254,10 @@ public class MessageController {
                 return ResponseEntity.status(400).body("Message content cannot be empty");
             }
             
+            if (!friendService.areFriends(currentUserId, friendId)) {
+                return ResponseEntity.status(403).body("You can only message your friends");
+            }
+            
             // Create and save message
             Message message = new Message();
             message.setSenderId(currentUserId);
@@ -144,11 +268,11 @@ public class MessageController {
             
             //System.out.println("✅ Message sent via API: " + savedMessage.getMessageId());
             
-            return ResponseEntity.ok(savedMessage);
+            return ResponseEntity.ok(MessageMapper.toView(savedMessage));
             
         } catch (Exception e) {
             //System.err.println("❌ Error sending message via API: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Error sending message via API", e);
             return ResponseEntity.status(500).body("Internal server error");
         }
     }
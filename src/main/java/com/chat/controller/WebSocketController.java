@@ -1,51 +1,144 @@
 package com.chat.controller;
 
+import com.chat.config.UserIdHandshakeInterceptor;
 import com.chat.dto.MessageDto;
+import com.chat.dto.MessageMapper;
+import com.chat.dto.ReceiptAck;
 import com.chat.entity.Message;
+import com.chat.entity.SnowflakeIdGenerator;
+import com.chat.service.FriendService;
+import com.chat.service.MessageDeliveryService;
+import com.chat.service.MessagePersistencePipeline;
 import com.chat.service.MessageService;
+import com.chat.service.ReceiptService;
+import com.chat.service.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.stereotype.Controller;
 
+import java.security.Principal;
 import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Controller
 public class WebSocketController {
+
+    private static final Logger log = LoggerFactory.getLogger(WebSocketController.class);
     
     private final MessageService messageService;
+    private final MessageDeliveryService deliveryService;
+    private final FriendService friendService;
+    private final UserService userService;
+    private final ReceiptService receiptService;
+    // Only present when chat.persistence.mode=write-behind
+    private final MessagePersistencePipeline pipeline;
+    private final Timer persistTimer;
     
-    public WebSocketController(MessageService messageService) {
+    public WebSocketController(MessageService messageService, MessageDeliveryService deliveryService,
+                               FriendService friendService, UserService userService,
+                               ReceiptService receiptService,
+                               ObjectProvider<MessagePersistencePipeline> pipeline, MeterRegistry registry) {
         this.messageService = messageService;
+        this.deliveryService = deliveryService;
+        this.friendService = friendService;
+        this.userService = userService;
+        this.receiptService = receiptService;
+        this.pipeline = pipeline.getIfAvailable();
+        // Time the sender waits for persistence: the whole insert + commit, or just the enqueue
+        this.persistTimer = Timer.builder("chat.message.persist")
+                .description("Time spent storing a message on the send path")
+                .tag("mode", this.pipeline != null ? "write-behind" : "sync")
+                .publishPercentileHistogram()
+                .register(registry);
     }
     
     @MessageMapping("/chat")
-    @SendTo("/topic/messages")
-    public MessageDto broadcast(MessageDto msg) {
+    public void broadcast(MessageDto msg, Principal principal, SimpMessageHeaderAccessor headers) {
+        String senderUsername = principal != null ? principal.getName() : null;
+        
+        // The sender is whoever owns the session, never what the client claims
+        Long senderId = resolveSenderId(headers, senderUsername);
+        if (senderId == null) {
+            deliveryService.reject(senderUsername, msg, "Not authenticated.");
+            return;
+        }
+        msg.senderId = senderId;
+        
+        // Only friends can message each other
+        if (!friendService.areFriends(msg.senderId, msg.receiverId)) {
+            deliveryService.reject(senderUsername, msg, "You can only message your friends.");
+            return;
+        }
+        
         try {
-            // Save message to database
             Message message = new Message();
             message.setSenderId(msg.senderId);
             message.setReceiverId(msg.receiverId);
             message.setContent(msg.content);
             message.setSentAt(LocalDateTime.now());
-            message.setDelivered(true);
             
-            Message savedMessage = messageService.send(message);
+            if (pipeline != null) {
+                // Write-behind: the id is allocated up front, so the message can be
+                // delivered now; the sender gets an ack once it is stored
+                message.setMessageId(SnowflakeIdGenerator.nextId());
+                long start = System.nanoTime();
+                pipeline.submit(message, senderUsername, msg.clientMessageId);
+                persistTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                deliveryService.deliver(MessageMapper.toView(message, msg.clientMessageId), senderUsername);
+                return;
+            }
             
-            // Create response DTO with saved message data
-            MessageDto response = new MessageDto();
-            response.senderId = savedMessage.getSenderId();
-            response.receiverId = savedMessage.getReceiverId();
-            response.content = savedMessage.getContent();
+            // Save message to database
+            long start = System.nanoTime();
+            Message savedMessage = messageService.send(message);
+            persistTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
             
             //System.out.println("✅ Message saved and broadcast: " + savedMessage.getMessageId());
             
-            return response;
+            deliveryService.deliver(MessageMapper.toView(savedMessage, msg.clientMessageId), senderUsername);
             
         } catch (Exception e) {
             //System.err.println("❌ Error handling WebSocket message: " + e.getMessage());
-            e.printStackTrace();
-            return msg; // Return original message if save fails
+            log.error("Error handling WebSocket message", e);
+            deliveryService.deliver(MessageMapper.unsaved(msg), senderUsername); // Deliver original message if save fails
+        }
+    }
+    
+    /**
+     * Delivered/read acknowledgement for one conversation, applied in the next receipt batch
+     * @param ack - Conversation and the highest message ids received and read
+     */
+    @MessageMapping("/receipts")
+    public void receipts(ReceiptAck ack, Principal principal, SimpMessageHeaderAccessor headers) {
+        Long readerId = resolveSenderId(headers, principal != null ? principal.getName() : null);
+        if (readerId != null) {
+            receiptService.acknowledge(readerId, ack.friendId, ack.deliveredUpTo, ack.readUpTo);
+        }
+    }
+    
+    /**
+     * User id of the session owner. Set by UserIdHandshakeInterceptor at handshake;
+     * sessions without it are resolved by username once and remembered.
+     */
+    private Long resolveSenderId(SimpMessageHeaderAccessor headers, String senderUsername) {
+        Map<String, Object> attributes = headers.getSessionAttributes();
+        Object cached = attributes != null ? attributes.get(UserIdHandshakeInterceptor.USER_ID_ATTRIBUTE) : null;
+        if (cached instanceof Long userId) {
+            return userId;
+        }
+        if (senderUsername == null) {
+            return null;
+        }
+        Long userId = userService.findByUsername(senderUsername).map(u -> u.getUserId()).orElse(null);
+        if (userId != null && attributes != null) {
+            attributes.put(UserIdHandshakeInterceptor.USER_ID_ATTRIBUTE, userId);
         }
+        return userId;
     }
-}
\ No newline at end of file
+}
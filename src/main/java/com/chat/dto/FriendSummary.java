@@ -0,0 +1,23 @@
+package com.chat.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * The user columns the friends sidebar needs, read in one query instead of loading
+ * every friend's full User row.
+ */
+public class FriendSummary {
+    public Long userId;
+    public String username;
+    public boolean online;
+    public LocalDateTime lastSeen;
+
+    public FriendSummary() {}
+
+    public FriendSummary(Long userId, String username, boolean online, LocalDateTime lastSeen) {
+        this.userId = userId;
+        this.username = username;
+        this.online = online;
+        this.lastSeen = lastSeen;
+    }
+}
@@ -0,0 +1,11 @@
+package com.chat.dto;
+
+import java.util.List;
+
+/**
+ * One page of conversation history on the wire
+ * @param messages - Messages in chronological order (oldest first)
+ * @param hasMore - True when more messages exist in the direction that was requested
+ */
+public record HistoryPage(List<MessageView> messages, boolean hasMore) {
+}
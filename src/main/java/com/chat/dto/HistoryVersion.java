@@ -0,0 +1,18 @@
+package com.chat.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Validators for a conversation's history responses. The ETag changes with every new
+ * message and every read receipt; Last-Modified is the time of the latest message.
+ */
+public class HistoryVersion {
+    public final String eTag;
+    // Null for an empty conversation
+    public final LocalDateTime lastModified;
+
+    public HistoryVersion(String eTag, LocalDateTime lastModified) {
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+}
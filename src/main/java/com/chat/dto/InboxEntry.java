@@ -0,0 +1,34 @@
+package com.chat.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+import java.time.LocalDateTime;
+
+/**
+ * One conversation in a user's inbox, read from conversation_summaries in a single query
+ */
+public class InboxEntry {
+    public Long friendId;
+    public String username;
+    // Null until the first message; a string on the wire, like MessageView.messageId
+    @JsonSerialize(using = ToStringSerializer.class)
+    public Long lastMessageId;
+    public Long lastSenderId;
+    public String lastPreview;
+    public LocalDateTime lastSentAt;
+    public int unreadCount;
+
+    public InboxEntry() {}
+
+    public InboxEntry(Long friendId, String username, Long lastMessageId, Long lastSenderId,
+                      String lastPreview, LocalDateTime lastSentAt, int unreadCount) {
+        this.friendId = friendId;
+        this.username = username;
+        this.lastMessageId = lastMessageId;
+        this.lastSenderId = lastSenderId;
+        this.lastPreview = lastPreview;
+        this.lastSentAt = lastSentAt;
+        this.unreadCount = unreadCount;
+    }
+}
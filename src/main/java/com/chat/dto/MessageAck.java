@@ -0,0 +1,18 @@
+package com.chat.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+/**
+ * Write-behind outcome of a message, on /user/queue/acks
+ * @param clientMessageId - Id the sending client chose
+ * @param messageId - Server id, written as a string like {@link MessageView#messageId()}
+ * @param receiverId - Receiver's user id
+ * @param persisted - False when the message could not be stored
+ */
+public record MessageAck(
+        String clientMessageId,
+        @JsonSerialize(using = ToStringSerializer.class) Long messageId,
+        Long receiverId,
+        boolean persisted) {
+}
@@ -1,7 +1,13 @@
 package com.chat.dto;
 
+/**
+ * A chat message as a client sends it to /app/chat. What goes back out is a {@link MessageView}.
+ */
 public class MessageDto {
+    // Overwritten with the session owner's id
     public Long senderId;
     public Long receiverId;
     public String content;
-}
\ No newline at end of file
+    // Optional id chosen by the sending client, echoed back in acknowledgements
+    public String clientMessageId;
+}
@@ -0,0 +1,51 @@
+package com.chat.dto;
+
+import com.chat.entity.Message;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * The one place entities become wire DTOs, for both the HTTP API and STOMP
+ */
+public final class MessageMapper {
+
+    private MessageMapper() {}
+
+    public static MessageView toView(Message message) {
+        return toView(message, null);
+    }
+
+    /**
+     * @param message - Message entity
+     * @param clientMessageId - Id the sending client chose, or null
+     */
+    public static MessageView toView(Message message, String clientMessageId) {
+        return new MessageView(message.getMessageId(), message.getSenderId(), message.getReceiverId(),
+                message.getContent(), epochMillis(message.getSentAt()),
+                message.isDelivered(), message.isRead(), clientMessageId);
+    }
+
+    /**
+     * A message that could not be stored, as sent by the client and without an id
+     * @param message - Message from the client
+     */
+    public static MessageView unsaved(MessageDto message) {
+        return new MessageView(null, message.senderId, message.receiverId, message.content,
+                System.currentTimeMillis(), false, false, message.clientMessageId);
+    }
+
+    public static List<MessageView> toViews(List<Message> messages) {
+        return messages.stream().map(MessageMapper::toView).toList();
+    }
+
+    public static HistoryPage toPage(MessagePage page) {
+        return new HistoryPage(toViews(page.messages), page.hasMore);
+    }
+
+    // sentAt is stored as server local time
+    private static long epochMillis(LocalDateTime time) {
+        return time == null ? 0 : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,19 @@
+package com.chat.dto;
+
+import com.chat.entity.Message;
+
+import java.util.List;
+
+public class MessagePage {
+    // Messages in chronological order (oldest first)
+    public List<Message> messages;
+    // True when more messages exist in the direction that was requested
+    public boolean hasMore;
+
+    public MessagePage() {}
+
+    public MessagePage(List<Message> messages, boolean hasMore) {
+        this.messages = messages;
+        this.hasMore = hasMore;
+    }
+}
@@ -0,0 +1,29 @@
+package com.chat.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+/**
+ * A chat message as clients receive it, in history responses and live on
+ * /user/queue/messages. Built by {@link MessageMapper}; entities are never serialized.
+ * @param messageId - Snowflake id, written as a string: it does not fit a JavaScript number
+ * @param senderId - Sender's user id
+ * @param receiverId - Receiver's user id
+ * @param content - Message text
+ * @param sentAt - Epoch milliseconds
+ * @param delivered - Receiver's client has it
+ * @param read - Receiver has read it
+ * @param clientMessageId - Sending client's own id, only on the live copy of a new message
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record MessageView(
+        @JsonSerialize(using = ToStringSerializer.class) Long messageId,
+        Long senderId,
+        Long receiverId,
+        String content,
+        long sentAt,
+        boolean delivered,
+        boolean read,
+        String clientMessageId) {
+}
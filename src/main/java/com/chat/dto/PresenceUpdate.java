@@ -0,0 +1,16 @@
+package com.chat.dto;
+
+public class PresenceUpdate {
+    public Long userId;
+    public boolean online;
+    // Epoch millis of the change
+    public long lastSeen;
+
+    public PresenceUpdate() {}
+
+    public PresenceUpdate(Long userId, boolean online, long lastSeen) {
+        this.userId = userId;
+        this.online = online;
+        this.lastSeen = lastSeen;
+    }
+}
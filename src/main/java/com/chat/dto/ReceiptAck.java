@@ -0,0 +1,9 @@
+package com.chat.dto;
+
+public class ReceiptAck {
+    // The other user of the conversation, i.e. the sender of the acknowledged messages
+    public Long friendId;
+    // Highest message id received / read so far, 0 or null when unchanged
+    public Long deliveredUpTo;
+    public Long readUpTo;
+}
@@ -0,0 +1,16 @@
+package com.chat.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+/**
+ * Receipts for messages a user sent, on /user/queue/receipts
+ * @param readerId - User who received and/or read the messages
+ * @param deliveredUpTo - Every message sent to the reader up to this id is delivered
+ * @param readUpTo - Every message sent to the reader up to this id is read
+ */
+public record ReceiptUpdate(
+        Long readerId,
+        @JsonSerialize(using = ToStringSerializer.class) long deliveredUpTo,
+        @JsonSerialize(using = ToStringSerializer.class) long readUpTo) {
+}
@@ -0,0 +1,10 @@
+package com.chat.dto;
+
+/**
+ * Messages of one sender to one receiver within a set about to be removed
+ * @param senderId - Sender's user id
+ * @param receiverId - Receiver's user id
+ * @param unread - How many of them the receiver has not read
+ */
+public record RemovedMessages(Long senderId, Long receiverId, Long unread) {
+}
@@ -0,0 +1,155 @@
+package com.chat.entity;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
+import java.time.LocalDateTime;
+
+/**
+ * One user's view of a conversation with a friend: the latest message and how many
+ * messages from the friend are still unread. Kept up to date on send and on read
+ * receipts, so the inbox never has to scan messages. historyVersion counts changes to
+ * stored messages (receipts, retention) so the history ETag moves with them.
+ */
+@Entity
+@Table(name = "conversation_summaries", indexes = {
+    @Index(name = "idx_conversation_summaries_recent", columnList = "user_id, last_sent_at")
+})
+@IdClass(FriendId.class)
+public class ConversationSummary {
+
+    public static final int PREVIEW_LENGTH = 100;
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "friend_id")
+    private Long friendId;
+
+    @Column(name = "last_message_id")
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long lastMessageId;
+
+    @Column(name = "last_sender_id")
+    private Long lastSenderId;
+
+    @Column(name = "last_preview", length = PREVIEW_LENGTH)
+    private String lastPreview;
+
+    @Column(name = "last_sent_at")
+    private LocalDateTime lastSentAt;
+
+    @Column(name = "unread_count")
+    private int unreadCount;
+
+    @ColumnDefault("0")
+    @Column(name = "history_version", nullable = false)
+    private long historyVersion;
+
+    public ConversationSummary() {}
+
+    public ConversationSummary(Long userId, Long friendId) {
+        this.userId = userId;
+        this.friendId = friendId;
+    }
+
+    /**
+     * Start of a message, short enough for the preview column
+     */
+    public static String preview(String content) {
+        if (content == null || content.length() <= PREVIEW_LENGTH) {
+            return content;
+        }
+        int end = PREVIEW_LENGTH;
+        // Never split a surrogate pair
+        if (Character.isHighSurrogate(content.charAt(end - 1))) {
+            end--;
+        }
+        return content.substring(0, end);
+    }
+
+    /**
+     * Take the latest message from a conversation
+     */
+    public void setLastMessage(Message message) {
+        this.lastMessageId = message.getMessageId();
+        this.lastSenderId = message.getSenderId();
+        this.lastPreview = preview(message.getContent());
+        this.lastSentAt = message.getSentAt();
+    }
+
+    // Getter and Setter for userId
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    // Getter and Setter for friendId
+    public Long getFriendId() {
+        return friendId;
+    }
+
+    public void setFriendId(Long friendId) {
+        this.friendId = friendId;
+    }
+
+    // Getter and Setter for lastMessageId
+    public Long getLastMessageId() {
+        return lastMessageId;
+    }
+
+    public void setLastMessageId(Long lastMessageId) {
+        this.lastMessageId = lastMessageId;
+    }
+
+    // Getter and Setter for lastSenderId
+    public Long getLastSenderId() {
+        return lastSenderId;
+    }
+
+    public void setLastSenderId(Long lastSenderId) {
+        this.lastSenderId = lastSenderId;
+    }
+
+    // Getter and Setter for lastPreview
+    public String getLastPreview() {
+        return lastPreview;
+    }
+
+    public void setLastPreview(String lastPreview) {
+        this.lastPreview = lastPreview;
+    }
+
+    // Getter and Setter for lastSentAt
+    public LocalDateTime getLastSentAt() {
+        return lastSentAt;
+    }
+
+    public void setLastSentAt(LocalDateTime lastSentAt) {
+        this.lastSentAt = lastSentAt;
+    }
+
+    // Getter and Setter for unreadCount
+    public int getUnreadCount() {
+        return unreadCount;
+    }
+
+    public void setUnreadCount(int unreadCount) {
+        this.unreadCount = unreadCount;
+    }
+
+    // Getter and Setter for historyVersion
+    public long getHistoryVersion() {
+        return historyVersion;
+    }
+
+    public void setHistoryVersion(long historyVersion) {
+        this.historyVersion = historyVersion;
+    }
+}
@@ -1,20 +1,80 @@
 package com.chat.entity;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "messages")
-public class Message {
-    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+@Table(name = "messages", indexes = {
+    @Index(name = "idx_messages_conversation", columnList = "conversation_key, sent_at, message_id"),
+    @Index(name = "idx_messages_sent_at", columnList = "sent_at")
+})
+public class Message implements Persistable<Long> {
+    // Snowflake ids exceed Number.MAX_SAFE_INTEGER, so JSON carries them as strings
+    @Id @SnowflakeId
+    @JsonSerialize(using = ToStringSerializer.class)
     private Long messageId;
     private Long senderId;
     private Long receiverId;
+    // Same value for both directions of a conversation, see conversationKey(Long, Long)
+    @Column(name = "conversation_key", length = 41)
+    private String conversationKey;
     @Column(columnDefinition = "TEXT")
     private String content;
     private LocalDateTime sentAt;
     private boolean isDelivered = false;
+    private boolean isRead = false;
+    // Ids can be assigned before saving, so "new" cannot be derived from a null id
+    @Transient
+    private boolean isNew = true;
+
+    /**
+     * Normalized key of the conversation between two users, independent of direction
+     */
+    public static String conversationKey(Long userId1, Long userId2) {
+        long a = Math.min(userId1, userId2);
+        long b = Math.max(userId1, userId2);
+        return a + "_" + b;
+    }
+
+    @PrePersist
+    void assignConversationKey() {
+        if (conversationKey == null && senderId != null && receiverId != null) {
+            conversationKey = conversationKey(senderId, receiverId);
+        }
+    }
+
+    @PostPersist
+    @PostLoad
+    void markNotNew() {
+        isNew = false;
+    }
+
+    /**
+     * Treat the message as unsaved again after the transaction that inserted it rolled back,
+     * so saving it inserts the row instead of merging into one with the same id
+     */
+    public void markUnsaved() {
+        isNew = true;
+    }
+
+    @Override
+    @JsonIgnore
+    public Long getId() {
+        return messageId;
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return isNew;
+    }
+
     // getters/setters
     // Getter and Setter for messageId
     public Long getMessageId() {
@@ -43,6 +103,15 @@ public class Message {
         this.receiverId = receiverId;
     }
 
+    // Getter and Setter for conversationKey
+    public String getConversationKey() {
+        return conversationKey;
+    }
+
+    public void setConversationKey(String conversationKey) {
+        this.conversationKey = conversationKey;
+    }
+
     // Getter and Setter for content
     public String getContent() {
         return content;
@@ -69,4 +138,13 @@ public class Message {
     public void setDelivered(boolean isDelivered) {
         this.isDelivered = isDelivered;
     }
-}
\ No newline at end of file
+
+    // Getter and Setter for isRead
+    public boolean isRead() {
+        return isRead;
+    }
+
+    public void setRead(boolean isRead) {
+        this.isRead = isRead;
+    }
+}
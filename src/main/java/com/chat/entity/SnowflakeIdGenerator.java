@@ -0,0 +1,84 @@
+package com.chat.entity;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+
+import java.util.EnumSet;
+
+/**
+ * Time ordered 64-bit ids: 41 bits of milliseconds since 2024-01-01, 10 bits of node id
+ * and a 12 bit per-millisecond sequence. Ids increase monotonically on each node and can
+ * be assigned before the row is inserted, which lets Hibernate batch inserts (IDENTITY
+ * columns force one INSERT per row).
+ */
+public class SnowflakeIdGenerator implements BeforeExecutionGenerator {
+
+    public static final long EPOCH_MILLIS = 1704067200000L; // 2024-01-01T00:00:00Z
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static long nodeId = 0;
+    private static long lastMillis = -1L;
+    private static long sequence = 0L;
+
+    /**
+     * Set the node id (0-1023) that is embedded in every id generated by this JVM
+     */
+    public static synchronized void setNodeId(long id) {
+        if (id < 0 || id > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ": " + id);
+        }
+        nodeId = id;
+    }
+
+    /**
+     * Allocate the next id for this node
+     */
+    public static synchronized long nextId() {
+        long now = System.currentTimeMillis();
+        // Never go backwards, even if the wall clock does
+        if (now < lastMillis) {
+            now = lastMillis;
+        }
+        if (now == lastMillis) {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                // 4096 ids handed out in this millisecond, borrow the next one
+                now = lastMillis + 1;
+            }
+        } else {
+            sequence = 0;
+        }
+        lastMillis = now;
+        return ((now - EPOCH_MILLIS) << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+    }
+
+    /**
+     * Milliseconds since the Unix epoch at which the id was allocated
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue, EventType eventType) {
+        // Hibernate passes an assigned id as the current value; it has to be returned as is
+        return currentValue != null ? currentValue : nextId();
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+
+    @Override
+    public boolean allowAssignedIdentifiers() {
+        // Ids handed out ahead of the insert (write-behind pipeline) are kept
+        return true;
+    }
+}
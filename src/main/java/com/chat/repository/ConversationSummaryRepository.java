@@ -0,0 +1,74 @@
+package com.chat.repository;
+
+import com.chat.dto.InboxEntry;
+import com.chat.entity.ConversationSummary;
+import com.chat.entity.FriendId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface ConversationSummaryRepository extends JpaRepository<ConversationSummary, FriendId> {
+
+    @Query("SELECT new com.chat.dto.InboxEntry(s.friendId, u.username, s.lastMessageId, s.lastSenderId, " +
+           "s.lastPreview, s.lastSentAt, s.unreadCount) " +
+           "FROM ConversationSummary s JOIN User u ON u.userId = s.friendId " +
+           "WHERE s.userId = :userId ORDER BY s.lastSentAt DESC NULLS LAST, u.username")
+    List<InboxEntry> findInbox(@Param("userId") Long userId);
+
+    // Both rows of a conversation in one statement. The last message only moves forward,
+    // so batches stored out of order never bring back an older preview. lastMessageId is
+    // assigned last because MySQL evaluates SET left to right with the new values.
+    @Modifying
+    @Query("UPDATE ConversationSummary s SET " +
+           "s.unreadCount = s.unreadCount + CASE WHEN s.userId = :userA THEN :unreadA ELSE :unreadB END, " +
+           "s.lastSenderId = CASE WHEN s.lastMessageId IS NULL OR s.lastMessageId < :messageId " +
+           "THEN :senderId ELSE s.lastSenderId END, " +
+           "s.lastPreview = CASE WHEN s.lastMessageId IS NULL OR s.lastMessageId < :messageId " +
+           "THEN :preview ELSE s.lastPreview END, " +
+           "s.lastSentAt = CASE WHEN s.lastMessageId IS NULL OR s.lastMessageId < :messageId " +
+           "THEN :sentAt ELSE s.lastSentAt END, " +
+           "s.lastMessageId = CASE WHEN s.lastMessageId IS NULL OR s.lastMessageId < :messageId " +
+           "THEN :messageId ELSE s.lastMessageId END " +
+           "WHERE (s.userId = :userA AND s.friendId = :userB) OR (s.userId = :userB AND s.friendId = :userA)")
+    int recordMessages(@Param("userA") Long userA,
+                       @Param("userB") Long userB,
+                       @Param("unreadA") int unreadA,
+                       @Param("unreadB") int unreadB,
+                       @Param("messageId") Long messageId,
+                       @Param("senderId") Long senderId,
+                       @Param("preview") String preview,
+                       @Param("sentAt") LocalDateTime sentAt);
+
+    // Receipts change the history of both users; after a read only messages newer than the
+    // read point can still be unread, so the reader's count is taken from those
+    @Modifying
+    @Query("UPDATE ConversationSummary s SET s.historyVersion = s.historyVersion + 1, " +
+           "s.unreadCount = CASE WHEN s.userId = :readerId AND :readUpTo > 0 THEN " +
+           "(SELECT COUNT(m) FROM Message m WHERE m.conversationKey = :key AND m.receiverId = :readerId " +
+           "AND m.messageId > :readUpTo AND m.isRead = false) ELSE s.unreadCount END " +
+           "WHERE (s.userId = :readerId AND s.friendId = :friendId) OR (s.userId = :friendId AND s.friendId = :readerId)")
+    int applyReceipts(@Param("readerId") Long readerId,
+                      @Param("friendId") Long friendId,
+                      @Param("key") String conversationKey,
+                      @Param("readUpTo") long readUpTo);
+
+    // Rows by primary key, so only the listed summaries are touched
+    @Modifying
+    @Query("UPDATE ConversationSummary s SET s.historyVersion = s.historyVersion + 1 WHERE id(s) IN :ids")
+    int bumpHistoryVersion(@Param("ids") Collection<FriendId> ids);
+
+    // Removed messages the owner never read no longer count as unread
+    @Modifying
+    @Query("UPDATE ConversationSummary s SET s.unreadCount = " +
+           "CASE WHEN s.unreadCount > :removed THEN s.unreadCount - :removed ELSE 0 END WHERE id(s) IN :ids")
+    int discountUnread(@Param("ids") Collection<FriendId> ids, @Param("removed") int removed);
+
+    @Query("SELECT new com.chat.entity.FriendId(f.userId, f.friendId) FROM Friend f WHERE NOT EXISTS " +
+           "(SELECT 1 FROM ConversationSummary s WHERE s.userId = f.userId AND s.friendId = f.friendId)")
+    List<FriendId> findFriendshipsWithoutSummary();
+}
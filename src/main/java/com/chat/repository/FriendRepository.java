@@ -2,6 +2,7 @@ package com.chat.repository;
 
 
 
+import com.chat.dto.FriendSummary;
 import com.chat.entity.Friend;
 import com.chat.entity.FriendId;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -15,4 +16,9 @@ public interface FriendRepository extends JpaRepository<Friend, FriendId> {
     @Query("SELECT f.friendId FROM Friend f WHERE f.userId = :userId")
     List<Long> findFriendIdsByUserId(@Param("userId") Long userId);
 
+    @Query("SELECT new com.chat.dto.FriendSummary(u.userId, u.username, u.isOnline, u.lastSeen) " +
+           "FROM Friend f JOIN User u ON u.userId = f.friendId " +
+           "WHERE f.userId = :userId ORDER BY u.username")
+    List<FriendSummary> findFriendSummaries(@Param("userId") Long userId);
+
 }
\ No newline at end of file
@@ -1,8 +1,11 @@
 
 package com.chat.repository;
 
+import com.chat.dto.RemovedMessages;
 import com.chat.entity.Message;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -25,6 +28,80 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
            "ORDER BY m.sentAt ASC")
     List<Message> findConversationBetweenUsers(@Param("userId1") Long userId1, @Param("userId2") Long userId2);
     
-    @Query("SELECT m FROM Message m WHERE m.sentAt < :cutoffDate")
-    List<Message> findMessagesOlderThan(@Param("cutoffDate") LocalDateTime cutoffDate);
+    // Conversation queries over the (conversation_key, sent_at, message_id) index
+    
+    @Query("SELECT m FROM Message m WHERE m.conversationKey = :key " +
+           "ORDER BY m.sentAt ASC, m.messageId ASC")
+    List<Message> findConversation(@Param("key") String conversationKey);
+    
+    @Query("SELECT m FROM Message m WHERE m.conversationKey = :key " +
+           "ORDER BY m.sentAt DESC, m.messageId DESC")
+    List<Message> findLatestInConversation(@Param("key") String conversationKey, Pageable page);
+    
+    @Query("SELECT m FROM Message m WHERE m.conversationKey = :key AND " +
+           "(m.sentAt < :sentAt OR (m.sentAt = :sentAt AND m.messageId < :messageId)) " +
+           "ORDER BY m.sentAt DESC, m.messageId DESC")
+    List<Message> findInConversationBefore(@Param("key") String conversationKey,
+                                           @Param("sentAt") LocalDateTime sentAt,
+                                           @Param("messageId") Long messageId,
+                                           Pageable page);
+    
+    @Query("SELECT m FROM Message m WHERE m.conversationKey = :key AND " +
+           "(m.sentAt > :sentAt OR (m.sentAt = :sentAt AND m.messageId > :messageId)) " +
+           "ORDER BY m.sentAt ASC, m.messageId ASC")
+    List<Message> findInConversationAfter(@Param("key") String conversationKey,
+                                          @Param("sentAt") LocalDateTime sentAt,
+                                          @Param("messageId") Long messageId,
+                                          Pageable page);
+    
+    // Delta reads: everything after a message the client already has (ids are time ordered)
+    @Query("SELECT m FROM Message m WHERE m.conversationKey = :key AND m.messageId > :since " +
+           "ORDER BY m.sentAt ASC, m.messageId ASC")
+    List<Message> findInConversationSince(@Param("key") String conversationKey, @Param("since") Long since);
+    
+    // Fills conversation_key for rows written before the column existed
+    @Modifying
+    @Query("UPDATE Message m SET m.conversationKey = CASE " +
+           "WHEN m.senderId <= m.receiverId THEN CONCAT(CAST(m.senderId AS String), '_', CAST(m.receiverId AS String)) " +
+           "ELSE CONCAT(CAST(m.receiverId AS String), '_', CAST(m.senderId AS String)) END " +
+           "WHERE m.conversationKey IS NULL")
+    int backfillConversationKeys();
+    
+    // Receipts: one set-based UPDATE per conversation and reader
+    
+    // Reading implies delivery; the WHERE clause skips rows that already carry both flags
+    @Modifying
+    @Query("UPDATE Message m SET m.isDelivered = true, " +
+           "m.isRead = CASE WHEN m.messageId <= :readUpTo THEN true ELSE m.isRead END " +
+           "WHERE m.conversationKey = :key AND m.receiverId = :readerId AND m.messageId <= :upTo AND " +
+           "(m.isDelivered = false OR (m.isRead = false AND m.messageId <= :readUpTo))")
+    int markReceipts(@Param("key") String conversationKey,
+                     @Param("readerId") Long readerId,
+                     @Param("upTo") Long upTo,
+                     @Param("readUpTo") Long readUpTo);
+    
+    @Modifying
+    @Query("UPDATE Message m SET m.isDelivered = true WHERE m.messageId IN :ids AND m.isDelivered = false")
+    int markDeliveredByIds(@Param("ids") List<Long> ids);
+    
+    @Query("SELECT COUNT(m) FROM Message m WHERE m.conversationKey = :key AND m.receiverId = :receiverId " +
+           "AND m.isRead = false")
+    long countUnread(@Param("key") String conversationKey, @Param("receiverId") Long receiverId);
+    
+    // Retention: walk old messages in bounded chunks over the sent_at index
+    
+    @Query("SELECT m.messageId FROM Message m WHERE m.sentAt < :cutoffDate ORDER BY m.sentAt ASC, m.messageId ASC")
+    List<Long> findIdsOlderThan(@Param("cutoffDate") LocalDateTime cutoffDate, Pageable page);
+    
+    @Query("SELECT m FROM Message m WHERE m.sentAt < :cutoffDate ORDER BY m.sentAt ASC, m.messageId ASC")
+    List<Message> findOlderThan(@Param("cutoffDate") LocalDateTime cutoffDate, Pageable page);
+    
+    @Query("SELECT new com.chat.dto.RemovedMessages(m.senderId, m.receiverId, " +
+           "SUM(CASE WHEN m.isRead = false THEN 1L ELSE 0L END)) FROM Message m " +
+           "WHERE m.messageId IN :ids GROUP BY m.senderId, m.receiverId")
+    List<RemovedMessages> countBySenderAndReceiver(@Param("ids") List<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM Message m WHERE m.messageId IN :ids")
+    int deleteByMessageIdIn(@Param("ids") List<Long> ids);
 }
\ No newline at end of file
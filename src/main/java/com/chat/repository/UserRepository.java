@@ -1,11 +1,38 @@
 package com.chat.repository;
 
 import com.chat.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
     Optional<User> findByEmail(String email);
 	boolean existsByEmail(String email);
 	boolean existsByUsername(String username);
-}
\ No newline at end of file
+
+    @Modifying
+    @Query("UPDATE User u SET u.isOnline = :online, u.lastSeen = :lastSeen WHERE u.userId IN :ids")
+    int updatePresence(@Param("ids") List<Long> ids, @Param("online") boolean online, @Param("lastSeen") LocalDateTime lastSeen);
+
+    @Modifying
+    @Query("UPDATE User u SET u.isOnline = false WHERE u.isOnline = true")
+    int markAllOffline();
+
+    @Query("SELECT u.userId FROM User u WHERE u.userId IN :ids AND u.isOnline = true AND u.lastSeen >= :since")
+    List<Long> findOnlineSince(@Param("ids") Collection<Long> ids, @Param("since") LocalDateTime since);
+
+    @Query("SELECT u.userId FROM User u WHERE u.isOnline = true AND u.lastSeen < :cutoff")
+    List<Long> findOnlineSeenBefore(@Param("cutoff") LocalDateTime cutoff, Pageable page);
+
+    // Conditional, so when several nodes expire the same user only one of them wins
+    @Modifying
+    @Query("UPDATE User u SET u.isOnline = false WHERE u.userId = :id AND u.isOnline = true AND u.lastSeen < :cutoff")
+    int expireOnline(@Param("id") Long userId, @Param("cutoff") LocalDateTime cutoff);
+}
@@ -1,5 +1,7 @@
 package com.chat.service;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.util.LinkedMultiValueMap;
@@ -16,6 +18,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Service
 public class CaptchaService {
+
+    private static final Logger log = LoggerFactory.getLogger(CaptchaService.class);
     
     @Value("${recaptcha.secret-key}")
     private String secretKey;
@@ -31,12 +35,12 @@ public class CaptchaService {
     
     public boolean verifyCaptcha(String captchaResponse) {
         if (captchaResponse == null || captchaResponse.trim().isEmpty()) {
-            System.out.println("❌ CAPTCHA response is null or empty");
+            log.debug("CAPTCHA response is null or empty");
             return false;
         }
         
         try {
-            System.out.println("🔍 Verifying CAPTCHA response: " + captchaResponse.substring(0, Math.min(20, captchaResponse.length())) + "...");
+            log.debug("Verifying CAPTCHA response");
             
             // Prepare request headers
             HttpHeaders headers = new HttpHeaders();
@@ -52,19 +56,18 @@ public class CaptchaService {
             // Make request to Google
             ResponseEntity<String> response = restTemplate.postForEntity(VERIFY_URL, request, String.class);
             
-            System.out.println("📡 Google reCAPTCHA API Response: " + response.getBody());
+            log.debug("reCAPTCHA API response: {}", response.getBody());
             
             if (response.getStatusCode().is2xxSuccessful()) {
                 CaptchaResponse captchaResp = objectMapper.readValue(response.getBody(), CaptchaResponse.class);
-                System.out.println("✅ CAPTCHA verification result: " + captchaResp.isSuccess());
+                log.debug("CAPTCHA verification result: {}", captchaResp.isSuccess());
                 return captchaResp.isSuccess();
             } else {
-                System.err.println("❌ HTTP error from Google reCAPTCHA API: " + response.getStatusCode());
+                log.warn("HTTP error from reCAPTCHA API: {}", response.getStatusCode());
             }
             
         } catch (Exception e) {
-            System.err.println("❌ Error verifying CAPTCHA: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Error verifying CAPTCHA", e);
         }
         
         return false;
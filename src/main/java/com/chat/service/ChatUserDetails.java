@@ -0,0 +1,25 @@
+package com.chat.service;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+/**
+ * Authenticated user that also carries the database id, so controllers and the
+ * STOMP session never have to look the caller up by username.
+ */
+public class ChatUserDetails extends User {
+
+    private final Long userId;
+
+    public ChatUserDetails(Long userId, String username, String password,
+                           Collection<? extends GrantedAuthority> authorities) {
+        super(username, password, authorities);
+        this.userId = userId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+}
@@ -25,11 +25,8 @@ public class ChatUserDetailsService implements UserDetailsService {
                 .or(() -> userRepo.findByEmail(usernameOrEmail))
                 .orElseThrow(() -> new UsernameNotFoundException("User not found: " + usernameOrEmail));
 
-        // Create a simple UserDetails object with username, password, and a single ROLE_USER.
-        return org.springframework.security.core.userdetails.User
-                .withUsername(user.getUsername())
-                .password(user.getPasswordHash())
-                .authorities(Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")))
-                .build();
+        // Username, password and a single ROLE_USER, plus the user id for later requests
+        return new ChatUserDetails(user.getUserId(), user.getUsername(), user.getPasswordHash(),
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
     }
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package com.chat.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Node-to-node fan-out used by chat.broker.mode=bus. Every node publishes the messages
+ * its application code sends to the broker, and every node delivers what it receives
+ * to its own broker, so a message reaches sessions wherever they are connected.
+ */
+public interface ClusterBus {
+
+    /**
+     * Send a message to every other node. Must not block on slow or missing peers.
+     * @param message - Message to fan out
+     */
+    void publish(ClusterMessage message);
+
+    /**
+     * Register the handler for messages published by other nodes
+     * @param listener - Called once per received message
+     */
+    void subscribe(Consumer<ClusterMessage> listener);
+}
@@ -0,0 +1,58 @@
+package com.chat.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A broker message as it travels between nodes: the destination, the headers that
+ * matter to subscribers (content type and native headers) and the serialized payload.
+ * @param origin - Id of the publishing node
+ * @param destination - Broker destination, e.g. /topic/messages or /user/alice/queue/messages
+ * @param headers - Content type and native headers, first value of each
+ * @param payload - Serialized payload
+ */
+public record ClusterMessage(String origin, String destination, Map<String, String> headers, byte[] payload) {
+
+    public byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(origin);
+            out.writeUTF(destination);
+            out.writeShort(headers.size());
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                out.writeUTF(header.getKey());
+                out.writeUTF(header.getValue());
+            }
+            out.writeInt(payload.length);
+            out.write(payload);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static ClusterMessage decode(byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            String origin = in.readUTF();
+            String destination = in.readUTF();
+            int count = in.readUnsignedShort();
+            Map<String, String> headers = new LinkedHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                headers.put(in.readUTF(), in.readUTF());
+            }
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            return new ClusterMessage(origin, destination, headers, payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.chat.service;
+
+import com.chat.dto.MessagePage;
+import com.chat.entity.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The newest chat.history.tail-cache.messages-per-conversation messages of recently
+ * used conversations, so opening a conversation serves its latest page from memory.
+ * Each conversation keeps a bounded ring buffer in (sentAt, messageId) order; across
+ * conversations the least recently used are evicted once the estimated size exceeds
+ * chat.history.tail-cache.max-bytes.
+ *
+ * Saved messages and receipts are written through after their transaction commits. A
+ * tail loaded from the database is "complete" when it holds the whole conversation.
+ * Receipts update cached messages in place, so readers get copies made under the lock.
+ * Only the simple broker keeps every write of a conversation on one node, so the cache
+ * is off in the relay and bus modes.
+ */
+@Service
+public class ConversationTailCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationTailCache.class);
+
+    // Rough heap cost of a cached Message without its content
+    private static final int MESSAGE_OVERHEAD_BYTES = 160;
+
+    private static final Comparator<Message> ORDER = Comparator.comparing(Message::getSentAt)
+            .thenComparing(Message::getMessageId);
+
+    private final boolean enabled;
+    private final int capacity;
+    private final long maxBytes;
+    private final MessageArchive archive;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Access ordered, eldest first
+    private final LinkedHashMap<String, Tail> tails = new LinkedHashMap<>(256, 0.75f, true);
+    private volatile long residentBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public ConversationTailCache(MessageArchive archive,
+                                 MeterRegistry registry,
+                                 @Value("${chat.history.tail-cache.enabled:true}") boolean enabled,
+                                 @Value("${chat.history.tail-cache.messages-per-conversation:128}") int capacity,
+                                 @Value("${chat.history.tail-cache.max-bytes:67108864}") long maxBytes,
+                                 @Value("${chat.broker.mode:simple}") String brokerMode) {
+        this.archive = archive;
+        this.enabled = enabled && "simple".equalsIgnoreCase(brokerMode);
+        this.capacity = Math.max(1, capacity);
+        this.maxBytes = Math.max(0, maxBytes);
+        if (enabled && !this.enabled) {
+            log.info("Conversation tail cache disabled with chat.broker.mode={}", brokerMode);
+        }
+
+        this.hits = lookupCounter(registry, "hit");
+        this.misses = lookupCounter(registry, "miss");
+        this.evictions = Counter.builder("chat.history.tail.cache.evictions")
+                .description("Conversations dropped from the tail cache to stay under max-bytes")
+                .register(registry);
+        Gauge.builder("chat.history.tail.cache.bytes", this, c -> c.residentBytes)
+                .description("Estimated heap held by cached conversation tails")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("chat.history.tail.cache.conversations", this, ConversationTailCache::size)
+                .description("Conversations with a cached tail")
+                .register(registry);
+    }
+
+    private static Counter lookupCounter(MeterRegistry registry, String result) {
+        return Counter.builder("chat.history.tail.cache")
+                .description("Conversation tail cache lookups; hit rate = hit / (hit + miss)")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Messages kept per conversation
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return tails.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The latest page of a conversation, if the cache can answer it exactly
+     * @param conversationKey - Conversation key
+     * @param size - Page size
+     * @return Page in chronological order, or null on a miss
+     */
+    public MessagePage latestPage(String conversationKey, int size) {
+        if (!enabled) {
+            return null;
+        }
+        MessagePage page = null;
+        lock.lock();
+        try {
+            Tail tail = tails.get(conversationKey);
+            if (tail != null && tail.messages.size() > size) {
+                page = new MessagePage(tail.newest(size), true);
+            } else if (tail != null && tail.complete && !archive.isEnabled()) {
+                // Older messages may live in the archive, which only the database path reads
+                page = new MessagePage(tail.newest(tail.messages.size()), false);
+            }
+        } finally {
+            lock.unlock();
+        }
+        (page != null ? hits : misses).increment();
+        return page;
+    }
+
+    /**
+     * The whole conversation, if its tail holds every message
+     * @param conversationKey - Conversation key
+     * @return Messages in chronological order, or null on a miss
+     */
+    public List<Message> fullConversation(String conversationKey) {
+        if (!enabled) {
+            return null;
+        }
+        List<Message> messages = null;
+        lock.lock();
+        try {
+            Tail tail = tails.get(conversationKey);
+            if (tail != null && tail.complete) {
+                messages = tail.newest(tail.messages.size());
+            }
+        } finally {
+            lock.unlock();
+        }
+        (messages != null ? hits : misses).increment();
+        return messages;
+    }
+
+    /**
+     * Messages newer than one the client already has, if the tail reaches back to it
+     * @param conversationKey - Conversation key
+     * @param since - Message id the client has
+     * @return Newer messages in chronological order, or null on a miss
+     */
+    public List<Message> messagesSince(String conversationKey, long since) {
+        if (!enabled) {
+            return null;
+        }
+        List<Message> messages = null;
+        lock.lock();
+        try {
+            Tail tail = tails.get(conversationKey);
+            Message oldest = tail == null ? null : tail.messages.peekFirst();
+            if (tail != null && (tail.complete || (oldest != null && oldest.getMessageId() <= since))) {
+                messages = tail.messages.stream().filter(m -> m.getMessageId() > since)
+                        .map(ConversationTailCache::copyOf).toList();
+            }
+        } finally {
+            lock.unlock();
+        }
+        (messages != null ? hits : misses).increment();
+        return messages;
+    }
+
+    /**
+     * Install the tail read from the database after a miss
+     * @param conversationKey - Conversation key
+     * @param newestFirst - Latest messages of the conversation, newest first
+     * @param complete - True if these are all of its messages
+     */
+    public void load(String conversationKey, List<Message> newestFirst, boolean complete) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            Tail tail = new Tail(complete);
+            for (int i = newestFirst.size() - 1; i >= 0; i--) {
+                tail.add(copyOf(newestFirst.get(i)));
+            }
+            // Messages written through while the database was being read
+            Tail previous = tails.put(conversationKey, tail);
+            if (previous != null) {
+                residentBytes -= previous.bytes;
+                previous.messages.forEach(tail::add);
+            }
+            residentBytes += tail.bytes;
+            evictOverflow();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add newly saved messages to their conversations once the transaction commits
+     * @param messages - Saved messages
+     */
+    public void append(List<Message> messages) {
+        if (!enabled || messages.isEmpty()) {
+            return;
+        }
+        List<Message> copies = messages.stream().map(ConversationTailCache::copyOf).toList();
+        afterCommit(() -> {
+            lock.lock();
+            try {
+                for (Message m : copies) {
+                    // A tail started by a write knows nothing older, so it is never complete
+                    Tail tail = tails.computeIfAbsent(m.getConversationKey(), key -> new Tail(false));
+                    long before = tail.bytes;
+                    tail.add(m);
+                    residentBytes += tail.bytes - before;
+                }
+                evictOverflow();
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Mirror a receipt UPDATE on the cached messages once the transaction commits
+     * @param conversationKey - Conversation key
+     * @param readerId - Receiver of the acknowledged messages
+     * @param deliveredUpTo - Highest message id delivered
+     * @param readUpTo - Highest message id read
+     */
+    public void applyReceipts(String conversationKey, Long readerId, long deliveredUpTo, long readUpTo) {
+        if (!enabled) {
+            return;
+        }
+        afterCommit(() -> {
+            lock.lock();
+            try {
+                Tail tail = tails.get(conversationKey);
+                if (tail == null) {
+                    return;
+                }
+                for (Message m : tail.messages) {
+                    if (readerId.equals(m.getReceiverId())) {
+                        if (m.getMessageId() <= readUpTo) {
+                            m.setRead(true);
+                            m.setDelivered(true);
+                        } else if (m.getMessageId() <= deliveredUpTo) {
+                            m.setDelivered(true);
+                        }
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Drop every cached tail, e.g. after messages were deleted in bulk
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            tails.clear();
+            residentBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Tail>> eldest = tails.entrySet().iterator();
+        while (residentBytes > maxBytes && eldest.hasNext()) {
+            residentBytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private static void afterCommit(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
+    }
+
+    // Cached messages are never the entities of a caller's persistence context, nor handed
+    // out to be serialized while a receipt updates them
+    private static Message copyOf(Message m) {
+        Message copy = new Message();
+        copy.setMessageId(m.getMessageId());
+        copy.setSenderId(m.getSenderId());
+        copy.setReceiverId(m.getReceiverId());
+        copy.setConversationKey(m.getConversationKey() != null
+                ? m.getConversationKey()
+                : Message.conversationKey(m.getSenderId(), m.getReceiverId()));
+        copy.setContent(m.getContent());
+        copy.setSentAt(m.getSentAt());
+        copy.setDelivered(m.isDelivered());
+        copy.setRead(m.isRead());
+        return copy;
+    }
+
+    private static long weigh(Message m) {
+        return MESSAGE_OVERHEAD_BYTES + (m.getContent() == null ? 0 : 2L * m.getContent().length());
+    }
+
+    /**
+     * Ring buffer of one conversation's newest messages, oldest first
+     */
+    private final class Tail {
+        final Deque<Message> messages = new ArrayDeque<>();
+        boolean complete;
+        long bytes;
+
+        Tail(boolean complete) {
+            this.complete = complete;
+        }
+
+        void add(Message m) {
+            Message last = messages.peekLast();
+            if (last == null || ORDER.compare(last, m) < 0) {
+                messages.addLast(m);
+            } else {
+                // Out of order (write-behind batches, clock skew): walk back to its place
+                Deque<Message> newer = new ArrayDeque<>();
+                while (!messages.isEmpty() && ORDER.compare(messages.peekLast(), m) > 0) {
+                    newer.push(messages.pollLast());
+                }
+                Message previous = messages.peekLast();
+                boolean duplicate = previous != null && previous.getMessageId().equals(m.getMessageId());
+                if (!duplicate) {
+                    messages.addLast(m);
+                }
+                messages.addAll(newer);
+                if (duplicate) {
+                    return;
+                }
+            }
+            bytes += weigh(m);
+            while (messages.size() > capacity) {
+                bytes -= weigh(messages.pollFirst());
+                complete = false;
+            }
+        }
+
+        // Copies, newest count in chronological order
+        List<Message> newest(int count) {
+            List<Message> result = new ArrayList<>(count);
+            Iterator<Message> it = messages.descendingIterator();
+            while (it.hasNext() && result.size() < count) {
+                result.add(copyOf(it.next()));
+            }
+            Collections.reverse(result);
+            return result;
+        }
+    }
+}
@@ -1,27 +1,98 @@
 
 package com.chat.service;
 
+import com.chat.dto.FriendSummary;
 import com.chat.entity.Friend;
+import com.chat.entity.FriendId;
 import com.chat.entity.User;
 import com.chat.repository.FriendRepository;
 import com.chat.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Friendships, with two per-user caches: the friends sidebar rows and the sorted friend
+ * ids behind areFriends. Both hold at most chat.friends.cache.max-users users, least
+ * recently used dropped first. A friendship change evicts both users once its
+ * transaction has committed; a load that read the friends table before that commit is
+ * not cached, so no stale list outlives the change. Eviction only reaches this node, so
+ * like the conversation tail cache both caches are off in the relay and bus modes.
+ */
 @Service
 @Transactional
 public class FriendService {
 
+    private static final Logger log = LoggerFactory.getLogger(FriendService.class);
+
     private final FriendRepository friendRepository;
     private final UserRepository userRepository;
+    private final InboxService inboxService;
+    // userId -> friends sidebar rows; dropped for both users whenever a friendship changes
+    private final Map<Long, List<FriendSummary>> friendListCache;
+    // userId -> sorted friend ids, so areFriends is a binary search instead of a query
+    private final Map<Long, long[]> adjacencyCache;
+    private final boolean cacheEnabled;
+    // Bumped by every committed friendship change; loads that overlap one are not kept
+    private final AtomicLong friendshipVersion = new AtomicLong();
+
+    private final Counter friendListHits;
+    private final Counter friendListMisses;
+    private final Counter adjacencyHits;
+    private final Counter adjacencyMisses;
 
-    public FriendService(FriendRepository friendRepository, UserRepository userRepository) {
+    public FriendService(FriendRepository friendRepository, UserRepository userRepository,
+                         InboxService inboxService, MeterRegistry registry,
+                         @Value("${chat.friends.cache.enabled:true}") boolean cacheEnabled,
+                         @Value("${chat.friends.cache.max-users:10000}") int maxUsers,
+                         @Value("${chat.broker.mode:simple}") String brokerMode) {
         this.friendRepository = friendRepository;
         this.userRepository = userRepository;
+        this.inboxService = inboxService;
+        this.cacheEnabled = cacheEnabled && "simple".equalsIgnoreCase(brokerMode);
+        if (cacheEnabled && !this.cacheEnabled) {
+            log.info("Friend caches disabled with chat.broker.mode={}", brokerMode);
+        }
+        this.friendListCache = lruCache(maxUsers);
+        this.adjacencyCache = lruCache(maxUsers);
+        this.friendListHits = cacheCounter(registry, "friend-list", "hit");
+        this.friendListMisses = cacheCounter(registry, "friend-list", "miss");
+        this.adjacencyHits = cacheCounter(registry, "friend-ids", "hit");
+        this.adjacencyMisses = cacheCounter(registry, "friend-ids", "miss");
+    }
+
+    private static <V> Map<Long, V> lruCache(int maxUsers) {
+        int max = Math.max(1, maxUsers);
+        return Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+                return size() > max;
+            }
+        });
+    }
+
+    private static Counter cacheCounter(MeterRegistry registry, String cache, String result) {
+        return Counter.builder("chat.friends.cache")
+                .description("Friend cache lookups; hit rate = hit / (hit + miss)")
+                .tag("cache", cache)
+                .tag("result", result)
+                .register(registry);
     }
 
     /**
@@ -62,37 +133,76 @@ public class FriendService {
             // Save both relationships
             friendRepository.save(friendship1);
             friendRepository.save(friendship2);
+            inboxService.openConversation(currentUser.getUserId(), friendUser.getUserId());
+            evictAfterCommit(currentUser.getUserId(), friendUser.getUserId());
 
-            System.out.println("✅ Successfully added friend relationship:");
-            System.out.println("   " + currentUsername + " (ID: " + currentUser.getUserId() + ") ↔ " + friendUsername + " (ID: " + friendUser.getUserId() + ")");
+            log.info("Added friend relationship {} (ID: {}) <-> {} (ID: {})",
+                    currentUsername, currentUser.getUserId(), friendUsername, friendUser.getUserId());
 
             return true;
 
         } catch (Exception e) {
-            System.err.println("❌ Error adding friend: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Error adding friend", e);
             return false;
         }
     }
 
     /**
-     * Check if two users are already friends
+     * Check if two users are already friends. Answered from the adjacency cache when
+     * the user's friend ids are loaded, otherwise by a primary key probe on friends.
+     * Runs without its own transaction so a cache hit never touches the connection pool.
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public boolean areFriends(Long userId1, Long userId2) {
-        List<Long> user1Friends = friendRepository.findFriendIdsByUserId(userId1);
-        return user1Friends.contains(userId2);
+        if (userId1 == null || userId2 == null) {
+            return false;
+        }
+        long[] friendIds = adjacencyCache.get(userId1);
+        if (friendIds != null) {
+            adjacencyHits.increment();
+            return Arrays.binarySearch(friendIds, userId2) >= 0;
+        }
+        adjacencyMisses.increment();
+        return friendRepository.existsById(new FriendId(userId1, userId2));
     }
 
     /**
-     * Get all friends for a user
+     * Sorted ids of a user's friends, loaded into the adjacency cache on first use.
+     * The returned array is shared, do not modify it.
      */
-    public List<User> getFriends(Long userId) {
-        List<Long> friendIds = friendRepository.findFriendIdsByUserId(userId);
-        return friendIds.stream()
-                .map(friendId -> userRepository.findById(friendId))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .toList();
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public long[] getFriendIds(Long userId) {
+        long[] cached = adjacencyCache.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        long version = friendshipVersion.get();
+        long[] friendIds = friendRepository.findFriendIdsByUserId(userId).stream()
+                .mapToLong(Long::longValue)
+                .sorted()
+                .toArray();
+        cacheIfCurrent(adjacencyCache, userId, friendIds, version);
+        return friendIds;
+    }
+
+    /**
+     * Get all friends for a user, sorted by username. Served from the in-process cache
+     * after the first call; the cache is dropped when the user's friendships change.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<FriendSummary> getFriends(Long userId) {
+        List<FriendSummary> cached = friendListCache.get(userId);
+        if (cached != null) {
+            friendListHits.increment();
+            return cached;
+        }
+        friendListMisses.increment();
+        long version = friendshipVersion.get();
+        List<FriendSummary> friends = List.copyOf(friendRepository.findFriendSummaries(userId));
+        cacheIfCurrent(friendListCache, userId, friends, version);
+        // The ids are already at hand, keep them for areFriends as well
+        cacheIfCurrent(adjacencyCache, userId, friends.stream().mapToLong(f -> f.userId).sorted().toArray(), version);
+        return friends;
     }
 
     /**
@@ -101,15 +211,50 @@ public class FriendService {
     public boolean removeFriend(Long userId, Long friendId) {
         try {
             // Remove both directions of friendship
-            friendRepository.deleteById(new com.chat.entity.FriendId(userId, friendId));
-            friendRepository.deleteById(new com.chat.entity.FriendId(friendId, userId));
+            friendRepository.deleteById(new FriendId(userId, friendId));
+            friendRepository.deleteById(new FriendId(friendId, userId));
+            inboxService.closeConversation(userId, friendId);
+            evictAfterCommit(userId, friendId);
             return true;
         } catch (Exception e) {
-            System.err.println("❌ Error removing friend: " + e.getMessage());
+            log.error("Error removing friend", e);
             return false;
         }
     }
 
+    // Put first, then check: an eviction that ran in between removes the entry or,
+    // having bumped the version before removing, makes this undo the put
+    private <V> void cacheIfCurrent(Map<Long, V> cache, Long userId, V value, long version) {
+        if (!cacheEnabled) {
+            return;
+        }
+        cache.put(userId, value);
+        if (friendshipVersion.get() != version) {
+            cache.remove(userId, value);
+        }
+    }
+
+    // Evicting before commit would let a concurrent load put the old rows straight back
+    private void evictAfterCommit(Long userId, Long friendId) {
+        Runnable evict = () -> {
+            friendshipVersion.incrementAndGet();
+            friendListCache.remove(userId);
+            friendListCache.remove(friendId);
+            adjacencyCache.remove(userId);
+            adjacencyCache.remove(friendId);
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evict.run();
+            }
+        });
+    }
+
     /**
      * Find user by username
      */
@@ -0,0 +1,212 @@
+package com.chat.service;
+
+import com.chat.dto.HistoryVersion;
+import com.chat.dto.InboxEntry;
+import com.chat.dto.RemovedMessages;
+import com.chat.entity.ConversationSummary;
+import com.chat.entity.FriendId;
+import com.chat.entity.Message;
+import com.chat.repository.ConversationSummaryRepository;
+import com.chat.repository.MessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maintains conversation_summaries, one row per user and friend, so the inbox (latest
+ * message and unread count of every conversation) is a single indexed query. Rows are
+ * created with the friendship; sending updates both rows of the conversation with one
+ * UPDATE, and read receipts recount the reader's unread messages past the read point.
+ * Changes to messages already stored bump the conversation's history version instead.
+ */
+@Service
+@Transactional
+public class InboxService {
+
+    private static final Logger log = LoggerFactory.getLogger(InboxService.class);
+
+    private final ConversationSummaryRepository summaryRepo;
+    private final MessageRepository msgRepo;
+
+    public InboxService(ConversationSummaryRepository summaryRepo, MessageRepository msgRepo) {
+        this.summaryRepo = summaryRepo;
+        this.msgRepo = msgRepo;
+    }
+
+    /**
+     * Create summary rows for friendships made before the table existed
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillSummaries() {
+        List<FriendId> missing = summaryRepo.findFriendshipsWithoutSummary();
+        for (FriendId pair : missing) {
+            summaryRepo.save(summarize(pair.getUserId(), pair.getFriendId()));
+        }
+        if (!missing.isEmpty()) {
+            log.info("Created {} conversation summaries", missing.size());
+        }
+    }
+
+    /**
+     * Create both users' summary rows for a new friendship
+     * @param userId - One user of the conversation
+     * @param friendId - The other user
+     */
+    public void openConversation(Long userId, Long friendId) {
+        for (FriendId id : List.of(new FriendId(userId, friendId), new FriendId(friendId, userId))) {
+            if (!summaryRepo.existsById(id)) {
+                summaryRepo.save(summarize(id.getUserId(), id.getFriendId()));
+            }
+        }
+    }
+
+    /**
+     * Drop both users' summary rows when a friendship ends
+     * @param userId - One user of the conversation
+     * @param friendId - The other user
+     */
+    public void closeConversation(Long userId, Long friendId) {
+        summaryRepo.deleteAllByIdInBatch(List.of(new FriendId(userId, friendId), new FriendId(friendId, userId)));
+    }
+
+    /**
+     * Apply newly stored messages: one UPDATE per conversation, however many messages
+     * @param messages - Saved messages, in any order
+     */
+    public void recordMessages(List<Message> messages) {
+        Map<String, Batch> conversations = new LinkedHashMap<>();
+        for (Message m : messages) {
+            conversations.computeIfAbsent(Message.conversationKey(m.getSenderId(), m.getReceiverId()),
+                    key -> new Batch(Math.min(m.getSenderId(), m.getReceiverId()),
+                            Math.max(m.getSenderId(), m.getReceiverId())))
+                    .add(m);
+        }
+        for (Batch batch : conversations.values()) {
+            Message last = batch.last;
+            summaryRepo.recordMessages(batch.userA, batch.userB, batch.unreadA, batch.unreadB,
+                    last.getMessageId(), last.getSenderId(), ConversationSummary.preview(last.getContent()),
+                    last.getSentAt());
+        }
+    }
+
+    /**
+     * Apply receipts that changed messages: a new history version for both users and,
+     * after a read, the reader's unread count brought up to date
+     * @param readerId - User who received or read the messages
+     * @param friendId - Sender of the messages
+     * @param readUpTo - Highest message id read (0 for none)
+     */
+    public void markReceipts(Long readerId, Long friendId, long readUpTo) {
+        summaryRepo.applyReceipts(readerId, friendId, Message.conversationKey(readerId, friendId), readUpTo);
+    }
+
+    /**
+     * Note that messages are about to be removed from their conversations: a new history
+     * version for both users and unread counts without the removed messages
+     * @param messageIds - Messages being deleted, still present
+     */
+    public void messagesRemoved(List<Long> messageIds) {
+        if (messageIds.isEmpty()) {
+            return;
+        }
+        // The chunk's conversations first, then their rows by key in both directions; the
+        // receivers' rows lose the unread messages, grouped by how many they lose
+        Set<FriendId> rows = new HashSet<>();
+        Map<Integer, List<FriendId>> unreadRows = new HashMap<>();
+        for (RemovedMessages removed : msgRepo.countBySenderAndReceiver(messageIds)) {
+            FriendId receiverRow = new FriendId(removed.receiverId(), removed.senderId());
+            rows.add(receiverRow);
+            rows.add(new FriendId(removed.senderId(), removed.receiverId()));
+            if (removed.unread() > 0) {
+                unreadRows.computeIfAbsent(removed.unread().intValue(), n -> new ArrayList<>()).add(receiverRow);
+            }
+        }
+        summaryRepo.bumpHistoryVersion(rows);
+        unreadRows.forEach((unread, ids) -> summaryRepo.discountUnread(ids, unread));
+    }
+
+    /**
+     * Every conversation of a user, most recent first
+     * @param userId - User ID
+     * @return Inbox entries with last message preview and unread count
+     */
+    @Transactional(readOnly = true)
+    public List<InboxEntry> getInbox(Long userId) {
+        return summaryRepo.findInbox(userId);
+    }
+
+    /**
+     * Validators for the history of a conversation, read from both summary rows by key
+     * @param userId - Current user ID
+     * @param friendId - The other user
+     * @return ETag of latest message id, both unread counts and history versions, plus the
+     *         latest send time
+     */
+    @Transactional(readOnly = true)
+    public HistoryVersion getHistoryVersion(Long userId, Long friendId) {
+        List<ConversationSummary> rows = summaryRepo.findAllById(
+                List.of(new FriendId(userId, friendId), new FriendId(friendId, userId)));
+        if (rows.isEmpty()) {
+            // Not friends (any more): fall back to the newest message
+            Message latest = msgRepo.findLatestInConversation(Message.conversationKey(userId, friendId),
+                    PageRequest.of(0, 1)).stream().findFirst().orElse(null);
+            return latest == null
+                    ? new HistoryVersion("0", null)
+                    : new HistoryVersion(String.valueOf(latest.getMessageId()), latest.getSentAt());
+        }
+        ConversationSummary any = rows.get(0);
+        StringBuilder eTag = new StringBuilder(String.valueOf(any.getLastMessageId()));
+        for (ConversationSummary row : rows) {
+            // Receipts and the purge change stored messages without a new latest id
+            eTag.append('-').append(row.getUserId()).append(':').append(row.getUnreadCount())
+                    .append(':').append(row.getHistoryVersion());
+        }
+        return new HistoryVersion(eTag.toString(), any.getLastSentAt());
+    }
+
+    private ConversationSummary summarize(Long userId, Long friendId) {
+        String key = Message.conversationKey(userId, friendId);
+        ConversationSummary summary = new ConversationSummary(userId, friendId);
+        msgRepo.findLatestInConversation(key, PageRequest.of(0, 1)).stream()
+                .findFirst()
+                .ifPresent(summary::setLastMessage);
+        summary.setUnreadCount((int) msgRepo.countUnread(key, userId));
+        return summary;
+    }
+
+    private static final class Batch {
+        final long userA;
+        final long userB;
+        int unreadA;
+        int unreadB;
+        Message last;
+
+        Batch(long userA, long userB) {
+            this.userA = userA;
+            this.userB = userB;
+        }
+
+        void add(Message m) {
+            if (m.getReceiverId() == userA) {
+                unreadA++;
+            } else {
+                unreadB++;
+            }
+            if (last == null || m.getMessageId() > last.getMessageId()) {
+                last = m;
+            }
+        }
+    }
+}
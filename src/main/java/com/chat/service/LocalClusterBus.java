@@ -0,0 +1,54 @@
+package com.chat.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * In-JVM stand-in for a real bus (chat.broker.bus.transport=local): every application
+ * context started in the same JVM joins one cluster. Used by tests and the load harness
+ * to run several nodes side by side. Each node receives on its own thread, in order.
+ */
+@Service
+@ConditionalOnExpression("'${chat.broker.mode:simple}' == 'bus' and '${chat.broker.bus.transport:tcp}' == 'local'")
+public class LocalClusterBus implements ClusterBus {
+
+    private static final List<LocalClusterBus> MEMBERS = new CopyOnWriteArrayList<>();
+
+    private final List<Consumer<ClusterMessage>> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService receiver = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "cluster-bus-local");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public LocalClusterBus() {
+        MEMBERS.add(this);
+    }
+
+    @Override
+    public void publish(ClusterMessage message) {
+        for (LocalClusterBus member : MEMBERS) {
+            if (member != this) {
+                member.receiver.execute(() -> member.listeners.forEach(l -> l.accept(message)));
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterMessage> listener) {
+        listeners.add(listener);
+    }
+
+    @PreDestroy
+    public void leave() {
+        MEMBERS.remove(this);
+        receiver.shutdown();
+    }
+}
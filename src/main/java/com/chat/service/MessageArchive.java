@@ -0,0 +1,507 @@
+package com.chat.service;
+
+import com.chat.entity.Message;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Cold storage for messages moved out of the messages table (chat.retention.mode=archive).
+ *
+ * Each conversation has its own directory of append-only segment files. A segment is a
+ * sequence of deflate-compressed blocks of up to chat.archive.block-messages messages in
+ * ascending id order. Next to every segment an index file holds one fixed-size entry per
+ * block (first id, last id, offset, length, count); the index is small enough to keep in
+ * memory, and reads only inflate the blocks they need from a memory-mapped segment.
+ * Messages are purged in sentAt order, which is not quite id order, so a later block may
+ * hold ids below those of earlier blocks; blocks' id ranges can overlap. A crash can
+ * leave a partly written block or index entry at the end of a segment; both files are
+ * cut back to the last complete block when the conversation is opened.
+ *
+ * At most chat.archive.max-open-conversations conversations keep their index and mapped
+ * segments in memory; the least recently used are closed beyond that and reopened from
+ * disk when needed again.
+ */
+@Service
+public class MessageArchive {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int INDEX_ENTRY_BYTES = 32;
+
+    private final boolean enabled;
+    private final Path root;
+    private final long segmentMaxBytes;
+    private final int blockMessages;
+    private final int maxOpenConversations;
+    // Access ordered, eldest first
+    private final LinkedHashMap<String, ConversationArchive> conversations = new LinkedHashMap<>(256, 0.75f, true);
+    private final ReentrantLock conversationsLock = new ReentrantLock();
+
+    public MessageArchive(@Value("${chat.retention.mode:delete}") String retentionMode,
+                          @Value("${chat.archive.dir:archive}") String dir,
+                          @Value("${chat.archive.segment-max-bytes:67108864}") long segmentMaxBytes,
+                          @Value("${chat.archive.block-messages:256}") int blockMessages,
+                          @Value("${chat.archive.max-open-conversations:1000}") int maxOpenConversations) {
+        this.enabled = "archive".equalsIgnoreCase(retentionMode);
+        this.root = Paths.get(dir);
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.blockMessages = Math.max(1, blockMessages);
+        this.maxOpenConversations = Math.max(1, maxOpenConversations);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Append messages of one conversation to its archive and force them to disk.
+     * Messages whose id is already archived are skipped, so a chunk that was archived
+     * but not yet deleted can safely be archived again.
+     * @param conversationKey - Conversation the messages belong to
+     * @param messages - Messages to append
+     * @return Ids of the given messages the archive now holds, written now or before;
+     *         only these may be deleted from the table
+     */
+    public Set<Long> append(String conversationKey, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return Collections.emptySet();
+        }
+        List<Message> sorted = new ArrayList<>(messages);
+        sorted.sort((a, b) -> Long.compare(a.getMessageId(), b.getMessageId()));
+        try {
+            while (true) {
+                Set<Long> archived = conversation(conversationKey).append(sorted);
+                // Null: closed by eviction in the meantime, reopen it
+                if (archived != null) {
+                    return archived;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to archive conversation " + conversationKey, e);
+        }
+    }
+
+    /**
+     * Read archived messages older than a message id, newest first
+     * @param conversationKey - Conversation to read
+     * @param beforeId - Only messages with a smaller id; null reads from the newest
+     * @param limit - Maximum number of messages to return
+     * @return Messages in descending id order
+     */
+    public List<Message> readBefore(String conversationKey, Long beforeId, int limit) {
+        if (!enabled || limit <= 0 || !Files.isDirectory(conversationDir(conversationKey))) {
+            return Collections.emptyList();
+        }
+        try {
+            while (true) {
+                List<Message> messages = conversation(conversationKey)
+                        .readBefore(beforeId == null ? Long.MAX_VALUE : beforeId, limit);
+                if (messages != null) {
+                    return messages;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read archive of conversation " + conversationKey, e);
+        }
+    }
+
+    /**
+     * Conversations whose index is held in memory
+     */
+    public int getOpenConversations() {
+        conversationsLock.lock();
+        try {
+            return conversations.size();
+        } finally {
+            conversationsLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        conversationsLock.lock();
+        try {
+            conversations.values().forEach(ConversationArchive::close);
+            conversations.clear();
+        } finally {
+            conversationsLock.unlock();
+        }
+    }
+
+    private ConversationArchive conversation(String conversationKey) throws IOException {
+        conversationsLock.lock();
+        try {
+            ConversationArchive archive = conversations.get(conversationKey);
+            if (archive == null) {
+                archive = new ConversationArchive(conversationDir(conversationKey));
+                conversations.put(conversationKey, archive);
+                evictEldest(archive);
+            }
+            return archive;
+        } finally {
+            conversationsLock.unlock();
+        }
+    }
+
+    // Close least recently used conversations past the limit. One that is being written
+    // stays open for now (the limit is soft): closing it under a writer, then reopening
+    // it from disk, would give two instances appending to the same files.
+    private void evictEldest(ConversationArchive keep) {
+        Iterator<ConversationArchive> eldest = conversations.values().iterator();
+        while (conversations.size() > maxOpenConversations && eldest.hasNext()) {
+            ConversationArchive candidate = eldest.next();
+            if (candidate != keep && candidate.tryClose()) {
+                eldest.remove();
+            }
+        }
+    }
+
+    private Path conversationDir(String conversationKey) {
+        // Keys are "<id>_<id>", but never trust them as path components
+        return root.resolve(conversationKey.replaceAll("[^0-9_]", ""));
+    }
+
+    private static byte[] encodeBlock(List<Message> block) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(block.size() * 96);
+        DataOutputStream out = new DataOutputStream(raw);
+        out.writeInt(block.size());
+        for (Message m : block) {
+            out.writeLong(m.getMessageId());
+            out.writeLong(m.getSenderId());
+            out.writeLong(m.getReceiverId());
+            LocalDateTime sentAt = m.getSentAt();
+            out.writeLong(sentAt == null ? Long.MIN_VALUE : sentAt.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(sentAt == null ? 0 : sentAt.getNano());
+            // Receipt flags; blocks written before read receipts only ever have bit 0
+            out.writeByte((m.isDelivered() ? 1 : 0) | (m.isRead() ? 2 : 0));
+            byte[] content = m.getContent() == null ? new byte[0] : m.getContent().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(content.length);
+            out.write(content);
+        }
+        out.flush();
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw.toByteArray());
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.size() / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static List<Message> decodeBlock(ByteBuffer compressed, String conversationKey) throws IOException {
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteBufferInputStream(compressed), inflater))) {
+            int count = in.readInt();
+            List<Message> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Message m = new Message();
+                m.setMessageId(in.readLong());
+                m.setSenderId(in.readLong());
+                m.setReceiverId(in.readLong());
+                long seconds = in.readLong();
+                int nanos = in.readInt();
+                if (seconds != Long.MIN_VALUE) {
+                    m.setSentAt(LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC));
+                }
+                int flags = in.readUnsignedByte();
+                m.setDelivered((flags & 1) != 0);
+                m.setRead((flags & 2) != 0);
+                byte[] content = new byte[in.readInt()];
+                in.readFully(content);
+                m.setContent(new String(content, StandardCharsets.UTF_8));
+                m.setConversationKey(conversationKey);
+                messages.add(m);
+            }
+            return messages;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private record BlockEntry(int segment, long firstId, long lastId, long offset, int length, int count) {}
+
+    /**
+     * All segments of one conversation plus its in-memory sparse index
+     */
+    private final class ConversationArchive {
+        private final Path dir;
+        private final String conversationKey;
+        private final List<BlockEntry> blocks = new ArrayList<>();
+        private final Map<Integer, MappedByteBuffer> mapped = new ConcurrentHashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private int currentSegment;
+        private long currentSegmentSize;
+        // Set under the lock when evicted; a closed instance never touches the files again
+        private boolean closed;
+
+        ConversationArchive(Path dir) throws IOException {
+            this.dir = dir;
+            this.conversationKey = dir.getFileName().toString();
+            if (Files.isDirectory(dir)) {
+                loadIndex();
+            }
+        }
+
+        private void loadIndex() throws IOException {
+            List<Integer> segments = new ArrayList<>();
+            try (Stream<Path> files = Files.list(dir)) {
+                files.map(p -> p.getFileName().toString())
+                        .filter(name -> name.endsWith(INDEX_SUFFIX))
+                        .forEach(name -> segments.add(Integer.parseInt(name.substring(0, name.length() - INDEX_SUFFIX.length()))));
+            }
+            Collections.sort(segments);
+            for (int segment : segments) {
+                ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexPath(segment)));
+                Path segmentPath = segmentPath(segment);
+                long segmentSize = Files.exists(segmentPath) ? Files.size(segmentPath) : 0;
+                long validEnd = 0;
+                while (index.remaining() >= INDEX_ENTRY_BYTES) {
+                    BlockEntry entry = new BlockEntry(segment, index.getLong(), index.getLong(), index.getLong(),
+                            index.getInt(), index.getInt());
+                    // Entries are appended in offset order, each after its block; one that
+                    // goes backwards or whose block is not all there ends the usable part
+                    if (entry.offset() < validEnd || entry.offset() + entry.length() > segmentSize) {
+                        index.position(index.position() - INDEX_ENTRY_BYTES);
+                        break;
+                    }
+                    blocks.add(entry);
+                    validEnd = entry.offset() + entry.length();
+                }
+                // Cut off a torn index entry, or a block written without its entry, so the
+                // next append starts on a boundary
+                truncate(indexPath(segment), index.position());
+                if (segmentSize > validEnd) {
+                    truncate(segmentPath, validEnd);
+                }
+                currentSegment = segment;
+                currentSegmentSize = validEnd;
+            }
+        }
+
+        private void truncate(Path file, long size) throws IOException {
+            if (Files.size(file) == size) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(size);
+                channel.force(false);
+            }
+        }
+
+        Set<Long> append(List<Message> sorted) throws IOException {
+            // A lock rather than a monitor: the fsyncs below would pin a virtual thread
+            lock.lock();
+            try {
+                return closed ? null : appendLocked(sorted);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Set<Long> appendLocked(List<Message> sorted) throws IOException {
+            Set<Long> held = archivedIds(sorted);
+            Set<Long> archived = new HashSet<>(held);
+            List<Message> fresh = new ArrayList<>(sorted.size());
+            for (Message m : sorted) {
+                if (archived.add(m.getMessageId())) {
+                    fresh.add(m);
+                }
+            }
+            if (fresh.isEmpty()) {
+                return archived;
+            }
+
+            Files.createDirectories(dir);
+            for (int from = 0; from < fresh.size(); from += blockMessages) {
+                List<Message> block = fresh.subList(from, Math.min(fresh.size(), from + blockMessages));
+                byte[] compressed = encodeBlock(block);
+                if (currentSegmentSize > 0 && currentSegmentSize + compressed.length > segmentMaxBytes) {
+                    currentSegment++;
+                    currentSegmentSize = 0;
+                }
+                BlockEntry entry = new BlockEntry(currentSegment, block.get(0).getMessageId(),
+                        block.get(block.size() - 1).getMessageId(), currentSegmentSize, compressed.length, block.size());
+
+                // Block first, index entry second: an index entry never points at missing data
+                try (FileChannel seg = FileChannel.open(segmentPath(currentSegment),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    seg.write(ByteBuffer.wrap(compressed));
+                    seg.force(false);
+                }
+                ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+                indexEntry.putLong(entry.firstId()).putLong(entry.lastId()).putLong(entry.offset())
+                        .putInt(entry.length()).putInt(entry.count()).flip();
+                try (FileChannel idx = FileChannel.open(indexPath(currentSegment),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    idx.write(indexEntry);
+                    idx.force(false);
+                }
+
+                currentSegmentSize += compressed.length;
+                mapped.remove(currentSegment);
+                blocks.add(entry);
+            }
+            return archived;
+        }
+
+        // Ids among the messages that are already archived; only blocks whose id range
+        // covers one of them are inflated, which for ids above the archive is none
+        private Set<Long> archivedIds(List<Message> messages) throws IOException {
+            Set<Long> held = new HashSet<>();
+            for (BlockEntry entry : blocks) {
+                boolean covers = false;
+                for (Message m : messages) {
+                    if (m.getMessageId() >= entry.firstId() && m.getMessageId() <= entry.lastId()) {
+                        covers = true;
+                        break;
+                    }
+                }
+                if (covers) {
+                    for (Message archived : decodeBlock(slice(entry), conversationKey)) {
+                        held.add(archived.getMessageId());
+                    }
+                }
+            }
+            held.retainAll(messages.stream().map(Message::getMessageId).toList());
+            return held;
+        }
+
+        List<Message> readBefore(long beforeId, int limit) throws IOException {
+            List<BlockEntry> snapshot;
+            lock.lock();
+            try {
+                if (closed) {
+                    return null;
+                }
+                snapshot = new ArrayList<>(blocks);
+            } finally {
+                lock.unlock();
+            }
+            // Highest blocks first; once limit messages are found, a block whose last id is
+            // below all of them has nothing to add, nor has any block after it
+            snapshot.sort((a, b) -> Long.compare(b.lastId(), a.lastId()));
+            TreeMap<Long, Message> result = new TreeMap<>();
+            for (BlockEntry entry : snapshot) {
+                if (entry.firstId() >= beforeId) {
+                    continue;
+                }
+                if (result.size() >= limit && entry.lastId() < result.firstKey()) {
+                    break;
+                }
+                for (Message m : decodeBlock(slice(entry), conversationKey)) {
+                    if (m.getMessageId() < beforeId) {
+                        result.put(m.getMessageId(), m);
+                    }
+                }
+                while (result.size() > limit) {
+                    result.pollFirstEntry();
+                }
+            }
+            return new ArrayList<>(result.descendingMap().values());
+        }
+
+        private ByteBuffer slice(BlockEntry entry) throws IOException {
+            MappedByteBuffer buffer = mapped.get(entry.segment());
+            if (buffer == null || buffer.capacity() < entry.offset() + entry.length()) {
+                try (FileChannel channel = FileChannel.open(segmentPath(entry.segment()), StandardOpenOption.READ)) {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+                mapped.put(entry.segment(), buffer);
+            }
+            return buffer.slice((int) entry.offset(), entry.length());
+        }
+
+        private Path segmentPath(int segment) {
+            return dir.resolve(String.format("%08d%s", segment, SEGMENT_SUFFIX));
+        }
+
+        private Path indexPath(int segment) {
+            return dir.resolve(String.format("%08d%s", segment, INDEX_SUFFIX));
+        }
+
+        // Evict unless a writer holds the conversation
+        boolean tryClose() {
+            if (!lock.tryLock()) {
+                return false;
+            }
+            try {
+                close();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // The mapped segments are unmapped once their buffers are collected
+        void close() {
+            closed = true;
+            blocks.clear();
+            mapped.clear();
+        }
+    }
+
+    /**
+     * Streams a ByteBuffer (a slice of a mapped segment) without copying it to the heap
+     */
+    private static final class ByteBufferInputStream extends java.io.InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+}
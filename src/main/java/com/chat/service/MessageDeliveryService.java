@@ -0,0 +1,127 @@
+package com.chat.service;
+
+import com.chat.dto.MessageDto;
+import com.chat.dto.MessageView;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+@Service
+public class MessageDeliveryService {
+
+    public static final String BROADCAST_DESTINATION = "/topic/messages";
+    public static final String USER_DESTINATION = "/queue/messages";
+    public static final String ERROR_DESTINATION = "/queue/errors";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final UserService userService;
+    private final ObjectWriter viewWriter;
+    private final boolean routed;
+    private final Timer fanoutTimer;
+
+    public MessageDeliveryService(SimpMessagingTemplate messagingTemplate,
+                                  UserService userService,
+                                  ObjectMapper objectMapper,
+                                  MeterRegistry registry,
+                                  @Value("${chat.websocket.delivery-mode:user}") String deliveryMode) {
+        this.messagingTemplate = messagingTemplate;
+        this.userService = userService;
+        this.viewWriter = objectMapper.writerFor(MessageView.class);
+        this.routed = !"broadcast".equalsIgnoreCase(deliveryMode);
+        this.fanoutTimer = Timer.builder("chat.message.fanout")
+                .description("Time to hand a message to the broker for every recipient")
+                .tag("mode", routed ? "user" : "broadcast")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Deliver a chat message to the connected sessions that should see it.
+     * In "user" mode the message is routed through user destinations, so only the
+     * sender's and receiver's sessions (every tab/device) receive a copy.
+     * In "broadcast" mode it is published to every subscriber of /topic/messages.
+     * The JSON is written once and the same bytes go to every destination.
+     * @param message - Message to deliver
+     * @param senderUsername - Username of the sender, or null to look it up
+     */
+    public void deliver(MessageView message, String senderUsername) {
+        long start = System.nanoTime();
+        try {
+            route(message, senderUsername);
+        } finally {
+            fanoutTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void route(MessageView message, String senderUsername) {
+        byte[] json = serialize(message);
+        if (!routed) {
+            send(BROADCAST_DESTINATION, json);
+            return;
+        }
+
+        String sender = senderUsername != null ? senderUsername : userService.getUsernameById(message.senderId());
+        String receiver = userService.getUsernameById(message.receiverId());
+
+        if (sender != null) {
+            send(userDestination(sender), json);
+        }
+        if (receiver != null && !receiver.equals(sender)) {
+            send(userDestination(receiver), json);
+        }
+    }
+
+    private byte[] serialize(MessageView message) {
+        try {
+            return viewWriter.writeValueAsBytes(message);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize message " + message.messageId(), e);
+        }
+    }
+
+    // As convertAndSendToUser builds it
+    private String userDestination(String username) {
+        return messagingTemplate.getUserDestinationPrefix() + username.replace("/", "%2F") + USER_DESTINATION;
+    }
+
+    // Already JSON: labelled so no converter touches the payload again
+    private void send(String destination, byte[] json) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(json, accessor.getMessageHeaders()));
+    }
+
+    /**
+     * Tell the sender that a message was not accepted
+     * @param senderUsername - Username of the sender
+     * @param message - The rejected message
+     * @param reason - Human readable reason
+     */
+    public void reject(String senderUsername, MessageDto message, String reason) {
+        if (senderUsername == null) {
+            return;
+        }
+        Map<String, Object> error = new HashMap<>();
+        error.put("clientMessageId", message.clientMessageId);
+        error.put("receiverId", message.receiverId);
+        error.put("message", reason);
+        messagingTemplate.convertAndSendToUser(senderUsername, ERROR_DESTINATION, error);
+    }
+
+    public boolean isRouted() {
+        return routed;
+    }
+}
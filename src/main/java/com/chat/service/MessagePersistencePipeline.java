@@ -0,0 +1,208 @@
+package com.chat.service;
+
+import com.chat.dto.MessageAck;
+import com.chat.entity.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence for chat messages (chat.persistence.mode=write-behind).
+ * Messages are queued in a bounded in-memory buffer and a single writer thread stores
+ * them in batches, one transaction per batch. When the buffer is full the caller
+ * waits briefly and then stores the message itself, which slows producers down to
+ * the rate the database can absorb. Once a message is committed the sender receives
+ * a MessageAck on /user/queue/acks.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.persistence.mode", havingValue = "write-behind")
+public class MessagePersistencePipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(MessagePersistencePipeline.class);
+
+    public static final String ACK_DESTINATION = "/queue/acks";
+
+    private final MessageService messageService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final BlockingQueue<PendingMessage> queue;
+    private final int maxBatchSize;
+    private final long enqueueTimeoutMs;
+    private final boolean virtualThreads;
+
+    private final DistributionSummary batchSize;
+    private final Timer commitTimer;
+    private final Counter persisted;
+    private final Counter failed;
+    private final Counter overflow;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public MessagePersistencePipeline(MessageService messageService,
+                                      SimpMessagingTemplate messagingTemplate,
+                                      MeterRegistry registry,
+                                      Environment environment,
+                                      @Value("${chat.persistence.queue-capacity:10000}") int queueCapacity,
+                                      @Value("${chat.persistence.max-batch-size:200}") int maxBatchSize,
+                                      @Value("${chat.persistence.enqueue-timeout-ms:50}") long enqueueTimeoutMs) {
+        this.messageService = messageService;
+        this.messagingTemplate = messagingTemplate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.enqueueTimeoutMs = enqueueTimeoutMs;
+        this.virtualThreads = Threading.VIRTUAL.isActive(environment);
+
+        Gauge.builder("chat.persistence.queue.depth", queue, BlockingQueue::size)
+                .description("Messages waiting to be written")
+                .register(registry);
+        this.batchSize = DistributionSummary.builder("chat.persistence.batch.size")
+                .description("Messages written per commit")
+                .register(registry);
+        this.commitTimer = Timer.builder("chat.persistence.commit")
+                .description("Time to insert and commit one batch")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        this.persisted = Counter.builder("chat.persistence.messages").tag("result", "persisted").register(registry);
+        this.failed = Counter.builder("chat.persistence.messages").tag("result", "failed").register(registry);
+        this.overflow = Counter.builder("chat.persistence.overflow")
+                .description("Messages stored by the caller because the queue was full")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        if (virtualThreads) {
+            writer = new VirtualThreadTaskExecutor("message-writer-").getVirtualThreadFactory().newThread(this::runWriter);
+        } else {
+            writer = new Thread(this::runWriter, "message-writer");
+            writer.setDaemon(true);
+        }
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        // Anything still queued is written by the stopping thread
+        drainAndWriteAll();
+    }
+
+    /**
+     * Queue a message for persistence. Blocks for at most chat.persistence.enqueue-timeout-ms
+     * when the queue is full, after which the message is written on the calling thread.
+     * @param message - Message to store (messageId and sentAt should already be set)
+     * @param senderUsername - Username that receives the acknowledgement (may be null)
+     * @param clientMessageId - Client correlation id echoed in the acknowledgement
+     */
+    public void submit(Message message, String senderUsername, String clientMessageId) {
+        PendingMessage pending = new PendingMessage(message, senderUsername, clientMessageId);
+        try {
+            if (running && queue.offer(pending, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        overflow.increment();
+        write(List.of(pending));
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void runWriter() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Everything that arrived while the previous batch was committing joins this one
+                queue.drainTo(batch, maxBatchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Message writer error", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void drainAndWriteAll() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        while (queue.drainTo(batch, maxBatchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<PendingMessage> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            messages.add(pending.message());
+        }
+
+        long start = System.nanoTime();
+        try {
+            messageService.saveBatch(messages);
+            commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSize.record(batch.size());
+            persisted.increment(batch.size());
+            batch.forEach(pending -> acknowledge(pending, true));
+        } catch (Exception e) {
+            log.warn("Batch of {} messages failed, retrying one by one: {}", batch.size(), e.getMessage());
+            // Isolate the failing message(s) so one bad row does not lose the whole batch
+            for (PendingMessage pending : batch) {
+                // The rolled back insert already marked it as stored
+                pending.message().markUnsaved();
+                try {
+                    messageService.saveBatch(List.of(pending.message()));
+                    persisted.increment();
+                    acknowledge(pending, true);
+                } catch (Exception single) {
+                    failed.increment();
+                    acknowledge(pending, false);
+                }
+            }
+        }
+    }
+
+    private void acknowledge(PendingMessage pending, boolean ok) {
+        if (pending.senderUsername() == null) {
+            return;
+        }
+        MessageAck ack = new MessageAck(pending.clientMessageId(), pending.message().getMessageId(),
+                pending.message().getReceiverId(), ok);
+        messagingTemplate.convertAndSendToUser(pending.senderUsername(), ACK_DESTINATION, ack);
+    }
+
+    private record PendingMessage(Message message, String senderUsername, String clientMessageId) {}
+}
@@ -0,0 +1,174 @@
+package com.chat.service;
+
+import com.chat.entity.Message;
+import com.chat.repository.MessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Deletes messages older than chat.retention.max-age, or with chat.retention.mode=archive
+ * moves them to the {@link MessageArchive} first. Old rows are located through the
+ * sent_at index and removed in chunks of chat.retention.chunk-size, each chunk in its own
+ * transaction, so locks are short-lived and nothing is loaded into the heap beyond one
+ * chunk. The purge throttles itself to chat.retention.max-rows-per-second.
+ */
+@Service
+public class MessageRetentionService {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageRetentionService.class);
+
+    private final MessageRepository msgRepo;
+    private final MessageArchive archive;
+    private final ConversationTailCache tailCache;
+    private final InboxService inboxService;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration maxAge;
+    private final int chunkSize;
+    private final long maxRowsPerSecond;
+
+    private final Counter deletedCounter;
+    private final Timer runTimer;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public MessageRetentionService(MessageRepository msgRepo,
+                                   MessageArchive archive,
+                                   ConversationTailCache tailCache,
+                                   InboxService inboxService,
+                                   PlatformTransactionManager transactionManager,
+                                   MeterRegistry registry,
+                                   @Value("${chat.retention.max-age:7d}") Duration maxAge,
+                                   @Value("${chat.retention.chunk-size:1000}") int chunkSize,
+                                   @Value("${chat.retention.max-rows-per-second:5000}") long maxRowsPerSecond) {
+        this.msgRepo = msgRepo;
+        this.archive = archive;
+        this.tailCache = tailCache;
+        this.inboxService = inboxService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxAge = maxAge;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxRowsPerSecond = maxRowsPerSecond;
+        this.deletedCounter = Counter.builder("chat.retention.deleted")
+                .description("Messages removed by the retention purge")
+                .register(registry);
+        this.runTimer = Timer.builder("chat.retention.run")
+                .description("Duration of a retention purge")
+                .register(registry);
+    }
+
+    /**
+     * Delete old messages (scheduled task)
+     */
+    @Scheduled(cron = "${chat.retention.cron:0 0 0 * * ?}") // Daily at midnight by default
+    public void purgeOld() {
+        purgeOlderThan(LocalDateTime.now().minus(maxAge));
+    }
+
+    /**
+     * Delete every message sent before the cutoff, chunk by chunk
+     * @param cutoff - Messages with sentAt before this instant are removed
+     * @return Rows removed and time taken; empty if a purge was already running
+     */
+    public RetentionReport purgeOlderThan(LocalDateTime cutoff) {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Retention purge already running, skipping");
+            return new RetentionReport(0, Duration.ZERO);
+        }
+
+        long start = System.nanoTime();
+        long deleted = 0;
+        try {
+            PageRequest chunk = PageRequest.of(0, chunkSize);
+            while (true) {
+                Integer removed = transactionTemplate.execute(status -> archive.isEnabled()
+                        ? archiveChunk(cutoff, chunk)
+                        : deleteChunk(cutoff, chunk));
+                if (removed == null || removed == 0) {
+                    break;
+                }
+                deleted += removed;
+                deletedCounter.increment(removed);
+                throttle(deleted, start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.set(false);
+        }
+
+        Duration took = Duration.ofNanos(System.nanoTime() - start);
+        runTimer.record(took);
+        if (deleted > 0) {
+            // Cached tails may still hold removed messages
+            tailCache.clear();
+            log.info("Purged {} messages older than {} in {} ms", deleted, cutoff, took.toMillis());
+        }
+        return new RetentionReport(deleted, took);
+    }
+
+    private int deleteChunk(LocalDateTime cutoff, PageRequest chunk) {
+        List<Long> ids = msgRepo.findIdsOlderThan(cutoff, chunk);
+        return delete(ids);
+    }
+
+    // Archive mode: copy the chunk to the archive (forced to disk) before deleting it.
+    // Only ids the archive confirms it holds are deleted.
+    private int archiveChunk(LocalDateTime cutoff, PageRequest chunk) {
+        List<Message> old = msgRepo.findOlderThan(cutoff, chunk);
+        if (old.isEmpty()) {
+            return 0;
+        }
+        Map<String, List<Message>> byConversation = new HashMap<>();
+        for (Message m : old) {
+            String key = m.getConversationKey() != null
+                    ? m.getConversationKey()
+                    : Message.conversationKey(m.getSenderId(), m.getReceiverId());
+            byConversation.computeIfAbsent(key, k -> new ArrayList<>()).add(m);
+        }
+        Set<Long> archived = new HashSet<>();
+        byConversation.forEach((key, messages) -> archived.addAll(archive.append(key, messages)));
+        List<Long> ids = old.stream().map(Message::getMessageId).filter(archived::contains).toList();
+        return delete(ids);
+    }
+
+    // Histories that lose messages get a new ETag
+    private int delete(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        inboxService.messagesRemoved(ids);
+        return msgRepo.deleteByMessageIdIn(ids);
+    }
+
+    // Sleep just long enough to keep the average rate under the budget
+    private void throttle(long deletedSoFar, long startNanos) throws InterruptedException {
+        if (maxRowsPerSecond <= 0) {
+            return;
+        }
+        long targetNanos = deletedSoFar * 1_000_000_000L / maxRowsPerSecond;
+        long aheadNanos = targetNanos - (System.nanoTime() - startNanos);
+        if (aheadNanos > 0) {
+            Thread.sleep(aheadNanos / 1_000_000, (int) (aheadNanos % 1_000_000));
+        }
+    }
+
+    public record RetentionReport(long rowsDeleted, Duration duration) {}
+}
@@ -1,24 +1,90 @@
 
 package com.chat.service;
 
+import com.chat.dto.MessagePage;
 import com.chat.entity.Message;
 import com.chat.repository.MessageRepository;
-import org.springframework.scheduling.annotation.Scheduled;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
 @Transactional
 public class MessageService {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageService.class);
     
     private final MessageRepository msgRepo;
+    private final MessageArchive archive;
+    private final InboxService inboxService;
+    private final ConversationTailCache tailCache;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    
+    private final Timer fullHistoryTimer;
+    private final Timer pageTimer;
+    private final DistributionSummary fullHistorySize;
+    private final DistributionSummary pageSize;
     
-    public MessageService(MessageRepository msgRepo) { 
+    public MessageService(MessageRepository msgRepo,
+                          MessageArchive archive,
+                          InboxService inboxService,
+                          ConversationTailCache tailCache,
+                          MeterRegistry registry,
+                          @Value("${chat.history.default-page-size:50}") int defaultPageSize,
+                          @Value("${chat.history.max-page-size:100}") int maxPageSize) { 
         this.msgRepo = msgRepo; 
+        this.archive = archive;
+        this.inboxService = inboxService;
+        this.tailCache = tailCache;
+        this.maxPageSize = Math.max(1, maxPageSize);
+        this.defaultPageSize = Math.min(Math.max(1, defaultPageSize), this.maxPageSize);
+        
+        this.fullHistoryTimer = historyTimer(registry, "full");
+        this.pageTimer = historyTimer(registry, "page");
+        this.fullHistorySize = historySize(registry, "full");
+        this.pageSize = historySize(registry, "page");
+    }
+    
+    private static Timer historyTimer(MeterRegistry registry, String type) {
+        return Timer.builder("chat.history.query")
+                .description("Conversation history read latency")
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+    
+    private static DistributionSummary historySize(MeterRegistry registry, String type) {
+        return DistributionSummary.builder("chat.history.size")
+                .description("Messages returned per history read")
+                .tag("type", type)
+                .register(registry);
+    }
+    
+    /**
+     * Fill in the conversation key of messages stored before it was introduced
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillConversationKeys() {
+        int updated = msgRepo.backfillConversationKeys();
+        if (updated > 0) {
+            log.info("Assigned conversation keys to {} messages", updated);
+        }
     }
     
     /**
@@ -30,18 +96,36 @@ public class MessageService {
         if (message.getSentAt() == null) {
             message.setSentAt(LocalDateTime.now());
         }
-        message.setDelivered(true);
+        // Delivered and read are only set once the receiver acknowledges, see ReceiptService
         
         Message savedMessage = msgRepo.save(message);
+        inboxService.recordMessages(List.of(savedMessage));
+        tailCache.append(List.of(savedMessage));
         
-        System.out.println("✅ Message saved: ID=" + savedMessage.getMessageId() + 
-                          ", From=" + savedMessage.getSenderId() + 
-                          ", To=" + savedMessage.getReceiverId() + 
-                          ", Content='" + savedMessage.getContent() + "'");
+        // Never log message content
+        log.debug("Message saved: id={}, from={}, to={}",
+                savedMessage.getMessageId(), savedMessage.getSenderId(), savedMessage.getReceiverId());
         
         return savedMessage;
     }
     
+    /**
+     * Save a batch of messages in one transaction, so the whole batch shares a single commit
+     * @param messages - Messages to save
+     * @return Saved messages with IDs
+     */
+    public List<Message> saveBatch(List<Message> messages) {
+        for (Message message : messages) {
+            if (message.getSentAt() == null) {
+                message.setSentAt(LocalDateTime.now());
+            }
+        }
+        List<Message> saved = msgRepo.saveAll(messages);
+        inboxService.recordMessages(saved);
+        tailCache.append(saved);
+        return saved;
+    }
+    
     /**
      * Get messages from sender to receiver (one direction)
      * @param senderId - Sender user ID
@@ -59,33 +143,134 @@ public class MessageService {
      * @return List of messages sorted by timestamp
      */
     public List<Message> getConversationHistory(Long userId1, Long userId2) {
-        System.out.println("🔍 Getting conversation history between users " + userId1 + " and " + userId2);
+        long start = System.nanoTime();
+        String key = Message.conversationKey(userId1, userId2);
+        List<Message> messages = tailCache.fullConversation(key);
+        if (messages == null) {
+            messages = msgRepo.findConversation(key);
+        }
+        fullHistoryTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        fullHistorySize.record(messages.size());
+        log.debug("Loaded {} conversation messages between {} and {}", messages.size(), userId1, userId2);
+        return messages;
+    }
+    
+    /**
+     * Get the messages of a conversation newer than one the client already has
+     * @param userId1 - First user ID
+     * @param userId2 - Second user ID
+     * @param since - Newest message ID the client has
+     * @return Newer messages sorted by timestamp
+     */
+    public List<Message> getConversationSince(Long userId1, Long userId2, Long since) {
+        long start = System.nanoTime();
+        String key = Message.conversationKey(userId1, userId2);
+        List<Message> messages = tailCache.messagesSince(key, since);
+        if (messages == null) {
+            messages = msgRepo.findInConversationSince(key, since);
+        }
+        pageTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        pageSize.record(messages.size());
+        return messages;
+    }
+    
+    /**
+     * Get one page of the conversation between two users using a message id cursor.
+     * Without a cursor the latest page is returned; "before" walks back to older
+     * messages and "after" walks forward to newer ones.
+     * @param userId1 - First user ID
+     * @param userId2 - Second user ID
+     * @param before - Return messages older than this message id (optional)
+     * @param after - Return messages newer than this message id (optional)
+     * @param limit - Requested page size, capped at chat.history.max-page-size
+     * @return Page of messages in chronological order
+     */
+    public MessagePage getConversationPage(Long userId1, Long userId2, Long before, Long after, Integer limit) {
+        long start = System.nanoTime();
+        MessagePage result = loadConversationPage(userId1, userId2, before, after, limit);
+        pageTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        pageSize.record(result.messages.size());
+        return result;
+    }
+    
+    private MessagePage loadConversationPage(Long userId1, Long userId2, Long before, Long after, Integer limit) {
+        if (before != null && after != null) {
+            throw new IllegalArgumentException("Only one of 'before' and 'after' may be given");
+        }
         
-        // Get messages sent from user1 to user2
-        List<Message> messages1to2 = msgRepo.findBySenderIdAndReceiverId(userId1, userId2);
-        System.out.println("   Messages from " + userId1 + " to " + userId2 + ": " + messages1to2.size());
+        String key = Message.conversationKey(userId1, userId2);
+        int size = resolvePageSize(limit);
+        // Fetch one extra row to find out whether another page exists
+        PageRequest page = PageRequest.of(0, size + 1);
         
-        // Get messages sent from user2 to user1
-        List<Message> messages2to1 = msgRepo.findBySenderIdAndReceiverId(userId2, userId1);
-        System.out.println("   Messages from " + userId2 + " to " + userId1 + ": " + messages2to1.size());
+        List<Message> rows;
+        boolean newestFirst;
+        if (before != null) {
+            Optional<Message> cursor = findCursor(key, before);
+            if (cursor.isPresent()) {
+                rows = msgRepo.findInConversationBefore(key, cursor.get().getSentAt(), before, page);
+            } else if (archive.isEnabled()) {
+                // Cursor already moved to the archive, everything older lives there too
+                rows = Collections.emptyList();
+            } else {
+                throw new IllegalArgumentException("Unknown message cursor: " + before);
+            }
+            newestFirst = true;
+        } else if (after != null) {
+            Message cursor = findCursor(key, after)
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown message cursor: " + after));
+            rows = msgRepo.findInConversationAfter(key, cursor.getSentAt(), cursor.getMessageId(), page);
+            newestFirst = false;
+        } else {
+            MessagePage cached = tailCache.latestPage(key, size);
+            if (cached != null) {
+                return cached;
+            }
+            rows = loadLatest(key, size);
+            newestFirst = true;
+        }
         
-        // Combine and sort by timestamp
-        List<Message> allMessages = new java.util.ArrayList<>();
-        allMessages.addAll(messages1to2);
-        allMessages.addAll(messages2to1);
+        boolean hasMore = rows.size() > size;
+        List<Message> messages = new java.util.ArrayList<>(hasMore ? rows.subList(0, size) : rows);
         
-        // Sort by sentAt timestamp (chronological order)
-        List<Message> sortedMessages = allMessages.stream()
-                .sorted((m1, m2) -> {
-                    if (m1.getSentAt() == null && m2.getSentAt() == null) return 0;
-                    if (m1.getSentAt() == null) return 1;
-                    if (m2.getSentAt() == null) return -1;
-                    return m1.getSentAt().compareTo(m2.getSentAt());
-                })
-                .collect(Collectors.toList());
+        if (newestFirst && !hasMore && archive.isEnabled()) {
+            // Hot table exhausted, continue with archived (older) messages
+            Long archiveBefore = messages.isEmpty() ? before : messages.get(messages.size() - 1).getMessageId();
+            int remaining = size - messages.size();
+            List<Message> cold = archive.readBefore(key, archiveBefore, remaining + 1);
+            hasMore = cold.size() > remaining;
+            messages.addAll(hasMore ? cold.subList(0, remaining) : cold);
+        }
         
-        System.out.println("✅ Total conversation messages: " + sortedMessages.size());
-        return sortedMessages;
+        if (newestFirst) {
+            Collections.reverse(messages);
+        }
+        return new MessagePage(messages, hasMore);
+    }
+    
+    // Latest size + 1 rows; on a tail cache miss the whole tail is read and cached
+    private List<Message> loadLatest(String conversationKey, int size) {
+        if (!tailCache.isEnabled()) {
+            return msgRepo.findLatestInConversation(conversationKey, PageRequest.of(0, size + 1));
+        }
+        int capacity = tailCache.getCapacity();
+        List<Message> rows = msgRepo.findLatestInConversation(conversationKey,
+                PageRequest.of(0, Math.max(size, capacity) + 1));
+        tailCache.load(conversationKey, rows.size() > capacity ? rows.subList(0, capacity) : rows,
+                rows.size() <= capacity);
+        return rows.size() > size + 1 ? rows.subList(0, size + 1) : rows;
+    }
+    
+    private int resolvePageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return defaultPageSize;
+        }
+        return Math.min(limit, maxPageSize);
+    }
+    
+    private Optional<Message> findCursor(String conversationKey, Long messageId) {
+        return msgRepo.findById(messageId)
+                .filter(m -> conversationKey.equals(m.getConversationKey()));
     }
     
     /**
@@ -107,32 +292,37 @@ public class MessageService {
     }
     
     /**
-     * Delete old messages (scheduled task)
+     * Mark messages as delivered
+     * @param messageIds - List of message IDs to mark as delivered
+     * @return Number of messages that were not delivered before
      */
-    @Scheduled(cron = "0 0 0 * * ?") // Run daily at midnight
-    public void purgeOld() {
-        LocalDateTime cutoff = LocalDateTime.now().minusDays(7);
-        
-        List<Message> oldMessages = msgRepo.findAll().stream()
-            .filter(m -> m.getSentAt() != null && m.getSentAt().isBefore(cutoff))
-            .collect(Collectors.toList());
-        
-        if (!oldMessages.isEmpty()) {
-            System.out.println("🗑️ Purging " + oldMessages.size() + " old messages");
-            oldMessages.forEach(m -> msgRepo.deleteById(m.getMessageId()));
+    public int markAsDelivered(List<Long> messageIds) {
+        if (messageIds.isEmpty()) {
+            return 0;
         }
+        return msgRepo.markDeliveredByIds(messageIds);
     }
     
     /**
-     * Mark messages as delivered
-     * @param messageIds - List of message IDs to mark as delivered
+     * Apply a reader's receipts for one conversation with a single UPDATE.
+     * Only messages sent to the reader are touched; reading implies delivery.
+     * @param readerId - User who received the messages
+     * @param counterpartId - User who sent them
+     * @param deliveredUpTo - Highest message id delivered to the reader (0 for none)
+     * @param readUpTo - Highest message id read by the reader (0 for none)
+     * @return Number of messages whose receipt flags changed
      */
-    public void markAsDelivered(List<Long> messageIds) {
-        messageIds.forEach(id -> {
-            msgRepo.findById(id).ifPresent(message -> {
-                message.setDelivered(true);
-                msgRepo.save(message);
-            });
-        });
-    }
-}
\ No newline at end of file
+    public int applyReceipts(Long readerId, Long counterpartId, long deliveredUpTo, long readUpTo) {
+        long upTo = Math.max(deliveredUpTo, readUpTo);
+        if (upTo <= 0) {
+            return 0;
+        }
+        String key = Message.conversationKey(readerId, counterpartId);
+        int changed = msgRepo.markReceipts(key, readerId, upTo, readUpTo);
+        if (changed > 0) {
+            tailCache.applyReceipts(key, readerId, upTo, readUpTo);
+            inboxService.markReceipts(readerId, counterpartId, readUpTo);
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,316 @@
+package com.chat.service;
+
+import com.chat.config.SlowConsumerGuard;
+import com.chat.config.UserIdHandshakeInterceptor;
+import com.chat.dto.PresenceUpdate;
+import com.chat.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks who is online from STOMP session connect/disconnect events and inbound frames
+ * (messages and heartbeats). State lives in memory; friends that are online are told
+ * about changes on /user/queue/presence. The users table (isOnline, lastSeen) is only
+ * updated every chat.presence.flush-interval-ms, in a few set-based UPDATEs, so a wave
+ * of reconnects after a deploy does not turn into one write per connection.
+ *
+ * In the relay and bus modes a user may be connected to several nodes, so the users
+ * table is the shared source and being online is a lease: every flush renews lastSeen
+ * for the users connected here, and a user whose lease is older than
+ * chat.presence.lease-ms is set offline by whichever node gets there first, which also
+ * tells their friends. A node never writes offline on a disconnect or at startup.
+ */
+@Service
+public class PresenceService {
+
+    private static final Logger log = LoggerFactory.getLogger(PresenceService.class);
+
+    public static final String PRESENCE_DESTINATION = "/queue/presence";
+
+    private final UserRepository userRepo;
+    private final UserService userService;
+    private final FriendService friendService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int flushBatchSize;
+    // With more than one node a friend may be connected elsewhere
+    private final boolean clustered;
+    private final long leaseMs;
+
+    // sessionId -> userId of every connected STOMP session
+    private final Map<String, Long> sessions = new ConcurrentHashMap<>();
+    // userId -> open sessions (tabs/devices), only present while online
+    private final Map<Long, Integer> onlineUsers = new ConcurrentHashMap<>();
+    // sessionId -> time of the last inbound frame, epoch millis
+    private final Map<String, Long> lastActivity = new ConcurrentHashMap<>();
+    // userId -> latest state not yet written to the users table
+    private final Map<Long, PresenceState> pending = new ConcurrentHashMap<>();
+
+    public PresenceService(UserRepository userRepo,
+                           UserService userService,
+                           FriendService friendService,
+                           SimpMessagingTemplate messagingTemplate,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${chat.presence.flush-batch-size:1000}") int flushBatchSize,
+                           @Value("${chat.broker.mode:simple}") String brokerMode,
+                           @Value("${chat.presence.lease-ms:30000}") long leaseMs) {
+        this.userRepo = userRepo;
+        this.userService = userService;
+        this.friendService = friendService;
+        this.messagingTemplate = messagingTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.flushBatchSize = Math.max(1, flushBatchSize);
+        this.clustered = !"simple".equals(brokerMode);
+        this.leaseMs = leaseMs;
+    }
+
+    /**
+     * Nobody is connected right after startup, whatever the table says. Other nodes
+     * may still have users connected in a cluster; their leases run out on their own.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resetOnlineFlags() {
+        if (clustered) {
+            return;
+        }
+        Integer reset = transactionTemplate.execute(status -> userRepo.markAllOffline());
+        if (reset != null && reset > 0) {
+            log.info("Marked {} users offline after restart", reset);
+        }
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String sessionId = accessor.getSessionId();
+        Long userId = resolveUserId(event.getUser(), event.getMessage());
+        if (sessionId == null || userId == null || sessions.putIfAbsent(sessionId, userId) != null) {
+            return;
+        }
+        lastActivity.put(sessionId, System.currentTimeMillis());
+        if (onlineUsers.merge(userId, 1, Integer::sum) == 1) {
+            changed(userId, true);
+        }
+    }
+
+    @EventListener
+    public void onDisconnected(SessionDisconnectEvent event) {
+        release(event.getSessionId());
+    }
+
+    /**
+     * Forget a session; its user goes offline when this was their last session.
+     * Safe to call more than once (disconnect can be reported twice).
+     * @param sessionId - STOMP session id
+     */
+    public void release(String sessionId) {
+        Long userId = sessionId != null ? sessions.remove(sessionId) : null;
+        if (userId == null) {
+            return;
+        }
+        lastActivity.remove(sessionId);
+        if (onlineUsers.computeIfPresent(userId, (id, count) -> count > 1 ? count - 1 : null) == null) {
+            changed(userId, false);
+        }
+    }
+
+    /**
+     * Record activity on a session (any inbound frame, including heartbeats)
+     * @param sessionId - STOMP session id
+     */
+    public void touch(String sessionId) {
+        lastActivity.computeIfPresent(sessionId, (id, previous) -> System.currentTimeMillis());
+    }
+
+    /**
+     * Sessions with no inbound frame since the cutoff
+     * @param cutoffMillis - Epoch millis; sessions last active before this are returned
+     * @return Ids of the idle sessions
+     */
+    public List<String> getIdleSessions(long cutoffMillis) {
+        List<String> idle = new ArrayList<>();
+        lastActivity.forEach((sessionId, at) -> {
+            if (at < cutoffMillis) {
+                idle.add(sessionId);
+            }
+        });
+        return idle;
+    }
+
+    /**
+     * Whether the user has a session on this node
+     * @param userId - User to check
+     */
+    public boolean isOnline(Long userId) {
+        return userId != null && onlineUsers.containsKey(userId);
+    }
+
+    /**
+     * The users that are online anywhere: connected here, or in a cluster holding a
+     * current lease in the users table
+     * @param userIds - Users to check, e.g. someone's friends
+     * @return The online ones
+     */
+    public Set<Long> getOnline(Collection<Long> userIds) {
+        Set<Long> online = new HashSet<>();
+        for (Long userId : userIds) {
+            if (isOnline(userId)) {
+                online.add(userId);
+            }
+        }
+        if (clustered && online.size() < userIds.size()) {
+            online.addAll(userRepo.findOnlineSince(userIds, LocalDateTime.now().minusNanos(leaseMs * 1_000_000)));
+        }
+        return online;
+    }
+
+    public int getOnlineUserCount() {
+        return onlineUsers.size();
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Write pending presence changes to the users table. Changes are grouped by state
+     * and second, so each group is one UPDATE ... WHERE user_id IN (...).
+     */
+    @Scheduled(fixedDelayString = "${chat.presence.flush-interval-ms:10000}")
+    public void flush() {
+        if (clustered) {
+            // Renew the lease of everyone connected here
+            LocalDateTime now = LocalDateTime.now();
+            onlineUsers.keySet().forEach(userId -> pending.put(userId, new PresenceState(true, now)));
+        }
+        write();
+        if (clustered) {
+            expireLeases();
+        }
+    }
+
+    private void write() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<PresenceState, List<Long>> groups = new HashMap<>();
+        Map<Long, PresenceState> taken = new HashMap<>();
+        for (Long userId : new ArrayList<>(pending.keySet())) {
+            PresenceState state = pending.remove(userId);
+            if (state != null) {
+                taken.put(userId, state);
+                PresenceState group = new PresenceState(state.online(), state.at().truncatedTo(ChronoUnit.SECONDS));
+                groups.computeIfAbsent(group, k -> new ArrayList<>()).add(userId);
+            }
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> groups.forEach((state, ids) -> {
+                for (int from = 0; from < ids.size(); from += flushBatchSize) {
+                    userRepo.updatePresence(ids.subList(from, Math.min(ids.size(), from + flushBatchSize)),
+                            state.online(), state.at());
+                }
+            }));
+        } catch (Exception e) {
+            log.warn("Presence flush failed, will retry", e);
+            // Put the states back unless a newer change arrived meanwhile
+            taken.forEach(pending::putIfAbsent);
+        }
+    }
+
+    // Users whose lease ran out go offline, told to their friends by the node that expired them
+    private void expireLeases() {
+        LocalDateTime cutoff = LocalDateTime.now().minusNanos(leaseMs * 1_000_000);
+        try {
+            for (Long userId : userRepo.findOnlineSeenBefore(cutoff, PageRequest.of(0, flushBatchSize))) {
+                if (onlineUsers.containsKey(userId)) {
+                    continue;
+                }
+                Integer expired = transactionTemplate.execute(status -> userRepo.expireOnline(userId, cutoff));
+                if (expired != null && expired > 0) {
+                    notifyFriends(userId, false, LocalDateTime.now());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Presence lease expiry failed, will retry", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void changed(Long userId, boolean online) {
+        LocalDateTime now = LocalDateTime.now();
+        if (clustered && !online) {
+            // The user may still be connected to another node; the lease decides
+            return;
+        }
+        pending.put(userId, new PresenceState(online, now));
+        notifyFriends(userId, online, now);
+    }
+
+    private void notifyFriends(Long userId, boolean online, LocalDateTime now) {
+        PresenceUpdate update = new PresenceUpdate(userId, online,
+                now.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        // Only the latest state per user matters to a client that is behind
+        Map<String, Object> headers = Map.of(SlowConsumerGuard.COALESCE_KEY_HEADER, "presence-" + userId);
+        for (long friendId : friendService.getFriendIds(userId)) {
+            if (!clustered && !onlineUsers.containsKey(friendId)) {
+                continue; // nobody to tell
+            }
+            String friendUsername = userService.getUsernameById(friendId);
+            if (friendUsername != null) {
+                messagingTemplate.convertAndSendToUser(friendUsername, PRESENCE_DESTINATION, update, headers);
+            }
+        }
+    }
+
+    private Long resolveUserId(Principal principal, Message<?> message) {
+        if (principal instanceof Authentication auth && auth.getPrincipal() instanceof ChatUserDetails user) {
+            return user.getUserId();
+        }
+        // The CONNECT_ACK carries the original CONNECT, which has the session attributes
+        Object connect = message.getHeaders().get(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER);
+        Message<?> source = connect instanceof Message<?> connectMessage ? connectMessage : message;
+        Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(source.getHeaders());
+        if (attributes != null && attributes.get(UserIdHandshakeInterceptor.USER_ID_ATTRIBUTE) instanceof Long userId) {
+            return userId;
+        }
+        if (principal == null) {
+            return null;
+        }
+        return userService.findByUsername(principal.getName()).map(u -> u.getUserId()).orElse(null);
+    }
+
+    private record PresenceState(boolean online, LocalDateTime at) {}
+}
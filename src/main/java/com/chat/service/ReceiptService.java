@@ -0,0 +1,131 @@
+package com.chat.service;
+
+import com.chat.dto.ReceiptUpdate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Delivery and read receipts. Clients acknowledge "delivered/read up to message id" per
+ * conversation; acks are merged in memory (highest id wins) and written every
+ * chat.receipts.flush-interval-ms with one UPDATE per conversation, however many messages
+ * or acks it covers. The sender of the messages then gets a single ReceiptUpdate on
+ * /user/queue/receipts.
+ */
+@Service
+public class ReceiptService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReceiptService.class);
+
+    public static final String RECEIPT_DESTINATION = "/queue/receipts";
+
+    private final MessageService messageService;
+    private final UserService userService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final Map<Conversation, Receipt> pending = new ConcurrentHashMap<>();
+
+    private final Counter acks;
+    private final Counter updates;
+    private final Timer flushTimer;
+
+    public ReceiptService(MessageService messageService,
+                          UserService userService,
+                          SimpMessagingTemplate messagingTemplate,
+                          MeterRegistry registry) {
+        this.messageService = messageService;
+        this.userService = userService;
+        this.messagingTemplate = messagingTemplate;
+        this.acks = Counter.builder("chat.receipts.acks")
+                .description("Receipt acknowledgements received from clients")
+                .register(registry);
+        this.updates = Counter.builder("chat.receipts.updates")
+                .description("Conversation receipt UPDATEs written to the database")
+                .register(registry);
+        this.flushTimer = Timer.builder("chat.receipts.flush")
+                .description("Time to write and publish one batch of receipts")
+                .register(registry);
+    }
+
+    /**
+     * Record that a reader has received and/or read a conversation up to a message id
+     * @param readerId - User acknowledging the messages
+     * @param counterpartId - Sender of the acknowledged messages
+     * @param deliveredUpTo - Highest message id received (null or 0 for none)
+     * @param readUpTo - Highest message id read (null or 0 for none)
+     */
+    public void acknowledge(Long readerId, Long counterpartId, Long deliveredUpTo, Long readUpTo) {
+        long read = readUpTo == null ? 0 : readUpTo;
+        long delivered = Math.max(deliveredUpTo == null ? 0 : deliveredUpTo, read);
+        if (readerId == null || counterpartId == null || delivered <= 0) {
+            return;
+        }
+        acks.increment();
+        pending.merge(new Conversation(readerId, counterpartId), new Receipt(delivered, read), Receipt::max);
+    }
+
+    /**
+     * Write every pending receipt and notify the senders (scheduled task)
+     * @return Number of conversations written
+     */
+    @Scheduled(fixedDelayString = "${chat.receipts.flush-interval-ms:250}")
+    public int flush() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        return flushTimer.record(() -> {
+            int written = 0;
+            for (Conversation conversation : pending.keySet()) {
+                Receipt receipt = pending.remove(conversation);
+                if (receipt != null && apply(conversation, receipt)) {
+                    written++;
+                }
+            }
+            return written;
+        });
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+
+    private boolean apply(Conversation conversation, Receipt receipt) {
+        try {
+            int changed = messageService.applyReceipts(conversation.readerId, conversation.counterpartId,
+                    receipt.deliveredUpTo, receipt.readUpTo);
+            updates.increment();
+            if (changed == 0) {
+                // Repeated ack, the sender already knows
+                return true;
+            }
+            String sender = userService.getUsernameById(conversation.counterpartId);
+            if (sender != null) {
+                messagingTemplate.convertAndSendToUser(sender, RECEIPT_DESTINATION,
+                        new ReceiptUpdate(conversation.readerId, receipt.deliveredUpTo, receipt.readUpTo));
+            }
+            return true;
+        } catch (RuntimeException e) {
+            // Clients ack again on their next read, nothing else to retry
+            log.warn("Failed to apply receipts of {} for {}: {}", conversation.readerId,
+                    conversation.counterpartId, e.getMessage());
+            return false;
+        }
+    }
+
+    private record Conversation(Long readerId, Long counterpartId) {}
+
+    private record Receipt(long deliveredUpTo, long readUpTo) {
+        Receipt max(Receipt other) {
+            return new Receipt(Math.max(deliveredUpTo, other.deliveredUpTo), Math.max(readUpTo, other.readUpTo));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.chat.service;
+
+import com.chat.config.WebSocketSessionRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+
+import java.util.List;
+
+/**
+ * Closes STOMP sessions that have sent nothing, not even a heartbeat, for
+ * chat.websocket.idle-timeout-ms. Clients heartbeat every few seconds, so a silent
+ * session is a half-open connection: closing it makes the broker drop its
+ * subscriptions, and its presence is released right away instead of waiting for a
+ * TCP timeout.
+ */
+@Service
+public class SessionReaper {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionReaper.class);
+
+    private static final CloseStatus IDLE = CloseStatus.GOING_AWAY.withReason("Idle timeout");
+
+    private final PresenceService presenceService;
+    private final WebSocketSessionRegistry sessionRegistry;
+    private final long idleTimeoutMs;
+    private final Counter reaped;
+
+    public SessionReaper(PresenceService presenceService,
+                         WebSocketSessionRegistry sessionRegistry,
+                         MeterRegistry registry,
+                         @Value("${chat.websocket.idle-timeout-ms:35000}") long idleTimeoutMs) {
+        this.presenceService = presenceService;
+        this.sessionRegistry = sessionRegistry;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.reaped = Counter.builder("chat.websocket.reaped")
+                .description("Sessions closed because nothing was received within the idle timeout")
+                .register(registry);
+    }
+
+    /**
+     * Close every session idle for longer than the timeout (scheduled task)
+     * @return Number of sessions closed
+     */
+    @Scheduled(fixedDelayString = "${chat.websocket.reaper-interval-ms:10000}")
+    public int reap() {
+        List<String> idle = presenceService.getIdleSessions(System.currentTimeMillis() - idleTimeoutMs);
+        for (String sessionId : idle) {
+            sessionRegistry.close(sessionId, IDLE);
+            // Don't wait for the disconnect event, which may be late or missing on a dead socket
+            presenceService.release(sessionId);
+            reaped.increment();
+        }
+        if (!idle.isEmpty()) {
+            log.info("Closed {} idle sessions", idle.size());
+        }
+        return idle.size();
+    }
+}
@@ -0,0 +1,288 @@
+package com.chat.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Node-to-node bus over plain TCP (chat.broker.bus.transport=tcp). Each node listens on
+ * chat.broker.bus.bind-address:chat.broker.bus.port and keeps one outgoing connection per
+ * peer in chat.broker.bus.peers (host:port, comma separated). Messages are length-prefixed
+ * {@link ClusterMessage} frames. Every peer has a bounded send queue and its own writer
+ * thread, so a slow or unreachable peer never blocks the broker; when its queue is full
+ * messages for that peer are dropped and counted.
+ *
+ * Frames can address any user, so a connection is only read from once the peer has
+ * proven it knows chat.broker.bus.secret: the listening node sends a random challenge
+ * and expects its HMAC-SHA256 under the secret back. Frames are not encrypted; keep the
+ * bus on an internal network.
+ */
+@Service
+@ConditionalOnExpression("'${chat.broker.mode:simple}' == 'bus' and '${chat.broker.bus.transport:tcp}' == 'tcp'")
+public class TcpClusterBus implements ClusterBus {
+
+    private static final Logger log = LoggerFactory.getLogger(TcpClusterBus.class);
+
+    private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    private static final int CHALLENGE_BYTES = 32;
+    private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+
+    private final InetAddress bindAddress;
+    private final int port;
+    private final SecretKeySpec secret;
+    private final SecureRandom random = new SecureRandom();
+    private final List<Peer> peers = new ArrayList<>();
+    private final List<Consumer<ClusterMessage>> listeners = new CopyOnWriteArrayList<>();
+    private final Counter dropped;
+    private final Counter rejected;
+
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+
+    public TcpClusterBus(MeterRegistry registry,
+                         @Value("${chat.broker.bus.bind-address:127.0.0.1}") String bindAddress,
+                         @Value("${chat.broker.bus.port:7601}") int port,
+                         @Value("${chat.broker.bus.peers:}") List<String> peerAddresses,
+                         @Value("${chat.broker.bus.queue-capacity:10000}") int queueCapacity,
+                         @Value("${chat.broker.bus.secret:}") String secret) throws IOException {
+        if (secret.isBlank()) {
+            throw new IllegalStateException("chat.broker.bus.secret must be set for the TCP cluster bus");
+        }
+        this.bindAddress = InetAddress.getByName(bindAddress);
+        this.port = port;
+        this.secret = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        for (String address : peerAddresses) {
+            if (!address.isBlank()) {
+                String[] hostPort = address.trim().split(":");
+                peers.add(new Peer(hostPort[0], Integer.parseInt(hostPort[1]), queueCapacity));
+            }
+        }
+        this.dropped = Counter.builder("chat.cluster.dropped")
+                .description("Messages not sent to a peer because its queue was full")
+                .register(registry);
+        this.rejected = Counter.builder("chat.cluster.rejected")
+                .description("Incoming bus connections closed for failing the handshake")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        running = true;
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(bindAddress, port));
+        daemon(this::accept, "cluster-bus-accept").start();
+        for (Peer peer : peers) {
+            daemon(peer::runWriter, "cluster-bus-" + peer.host + ":" + peer.port).start();
+        }
+        log.info("Cluster bus listening on {}:{}, peers {}", bindAddress.getHostAddress(), port, peers);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        running = false;
+        serverSocket.close();
+        peers.forEach(Peer::close);
+    }
+
+    @Override
+    public void publish(ClusterMessage message) {
+        byte[] frame = message.encode();
+        for (Peer peer : peers) {
+            if (!peer.queue.offer(frame)) {
+                dropped.increment();
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterMessage> listener) {
+        listeners.add(listener);
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                daemon(() -> read(socket), "cluster-bus-read-" + socket.getRemoteSocketAddress()).start();
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Cluster bus accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void read(Socket socket) {
+        try (socket; DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            if (!authenticate(socket, in)) {
+                rejected.increment();
+                log.warn("Cluster bus rejected {}: failed the handshake", socket.getRemoteSocketAddress());
+                return;
+            }
+            while (running) {
+                int length = in.readInt();
+                if (length < 0 || length > MAX_FRAME_BYTES) {
+                    throw new IOException("Bad frame length " + length);
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                ClusterMessage message = ClusterMessage.decode(frame);
+                listeners.forEach(l -> l.accept(message));
+            }
+        } catch (IOException e) {
+            log.debug("Cluster bus connection from {} closed: {}", socket.getRemoteSocketAddress(), e.getMessage());
+        }
+    }
+
+    // Challenge the connecting peer; nothing it sends is read as a frame before it answers
+    private boolean authenticate(Socket socket, DataInputStream in) throws IOException {
+        byte[] challenge = new byte[CHALLENGE_BYTES];
+        random.nextBytes(challenge);
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+        OutputStream out = socket.getOutputStream();
+        out.write(challenge);
+        out.flush();
+        byte[] response = new byte[CHALLENGE_BYTES];
+        in.readFully(response);
+        socket.setSoTimeout(0);
+        return MessageDigest.isEqual(response, sign(challenge));
+    }
+
+    private byte[] sign(byte[] challenge) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(secret);
+            return mac.doFinal(challenge);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+
+    private static Thread daemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private final class Peer {
+        final String host;
+        final int port;
+        final BlockingQueue<byte[]> queue;
+        private Socket socket;
+        private DataOutputStream out;
+
+        Peer(String host, int port, int queueCapacity) {
+            this.host = host;
+            this.port = port;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        void runWriter() {
+            List<byte[]> batch = new ArrayList<>();
+            while (running) {
+                try {
+                    byte[] first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, 255);
+                    write(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (IOException e) {
+                    // Peer down or restarting: these messages are lost, reconnect on the next ones
+                    log.debug("Cluster bus peer {}:{} unavailable: {}", host, port, e.getMessage());
+                    dropped.increment(batch.size());
+                    close();
+                    sleepQuietly();
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        private void write(List<byte[]> batch) throws IOException {
+            if (socket == null) {
+                socket = new Socket();
+                socket.setTcpNoDelay(true);
+                socket.connect(new InetSocketAddress(host, port), 1000);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                answerChallenge();
+            }
+            for (byte[] frame : batch) {
+                out.writeInt(frame.length);
+                out.write(frame);
+            }
+            out.flush();
+        }
+
+        private void answerChallenge() throws IOException {
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            byte[] challenge = new byte[CHALLENGE_BYTES];
+            new DataInputStream(socket.getInputStream()).readFully(challenge);
+            out.write(sign(challenge));
+            out.flush();
+            socket.setSoTimeout(0);
+        }
+
+        void close() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                    // already broken
+                }
+                socket = null;
+                out = null;
+            }
+        }
+
+        private void sleepQuietly() {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+}
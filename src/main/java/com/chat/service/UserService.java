@@ -1,27 +1,47 @@
 package com.chat.service;
 
   import com.chat.entity.User;
+  import org.slf4j.Logger;
+  import org.slf4j.LoggerFactory;
   import com.chat.repository.UserRepository;
   import com.chat.repository.FriendRepository;
+  import org.springframework.beans.factory.annotation.Value;
   import org.springframework.security.crypto.password.PasswordEncoder;
   import org.springframework.stereotype.Service;
+  import org.springframework.transaction.annotation.Propagation;
   import org.springframework.transaction.annotation.Transactional;
   import java.time.LocalDateTime;
+  import java.util.Collections;
+  import java.util.LinkedHashMap;
   import java.util.List;
+  import java.util.Map;
   import java.util.Optional;
   import java.util.stream.Collectors;
 
   @Service
   @Transactional
   public class UserService {
+      private static final Logger log = LoggerFactory.getLogger(UserService.class);
+
       private final UserRepository userRepo;
       private final FriendRepository friendRepo;
       private final PasswordEncoder passwordEncoder;
+      // Usernames never change, so id -> username lookups are cached for message routing;
+      // at most chat.users.username-cache.max-users, least recently used dropped first
+      private final Map<Long, String> usernameCache;
 
-      public UserService(UserRepository userRepo, FriendRepository friendRepo, PasswordEncoder passwordEncoder) {
+      public UserService(UserRepository userRepo, FriendRepository friendRepo, PasswordEncoder passwordEncoder,
+                         @Value("${chat.users.username-cache.max-users:10000}") int maxUsers) {
           this.userRepo = userRepo;
           this.friendRepo = friendRepo;
           this.passwordEncoder = passwordEncoder;
+          int max = Math.max(1, maxUsers);
+          this.usernameCache = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+              @Override
+              protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                  return size() > max;
+              }
+          });
       }
 
       @Transactional
@@ -30,11 +50,10 @@ package com.chat.service;
               u.setPasswordHash(passwordEncoder.encode(u.getPasswordHash()));
               u.setLastSeen(LocalDateTime.now());
               User savedUser = userRepo.save(u);
-              System.out.println("✅ User registered successfully: ID=" + savedUser.getUserId() + ", Username=" + savedUser.getUsername());
+              log.info("User registered: ID={}, Username={}", savedUser.getUserId(), savedUser.getUsername());
               return savedUser;
           } catch (Exception e) {
-              System.err.println("❌ Error registering user: " + e.getMessage());
-              e.printStackTrace();
+              log.error("Error registering user", e);
               throw e;
           }
       }
@@ -47,14 +66,6 @@ package com.chat.service;
         return u.filter(user -> passwordEncoder.matches(rawPw, user.getPasswordHash()));
     }
 
-    public void updateStatus(Long id, boolean online) {
-        userRepo.findById(id).ifPresent(u -> {
-            u.setOnline(online);
-            u.setLastSeen(LocalDateTime.now());
-            userRepo.save(u);
-        });
-    }
-
     public boolean existsByEmail(String email) {
         return userRepo.existsByEmail(email);
     }
@@ -90,12 +101,24 @@ package com.chat.service;
     }
 
     /**
-     * Get username by user ID
+     * Get username by user ID (cached after the first lookup)
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public String getUsernameById(Long userId) {
-        return findById(userId)
+        if (userId == null) {
+            return null;
+        }
+        String cached = usernameCache.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        String username = findById(userId)
                 .map(User::getUsername)
                 .orElse(null);
+        if (username != null) {
+            usernameCache.put(userId, username);
+        }
+        return username;
     }
 
     
@@ -21,6 +21,16 @@
   let currentUserId = null;
   let isConnected = false;
 
+  // History paging state for the open conversation
+  const HISTORY_PAGE_SIZE = 50;
+  let oldestMessageId = null;
+  let hasOlderMessages = false;
+  let loadingOlderMessages = false;
+
+  // Highest message id from the open conversation already acknowledged as read
+  // Message ids are strings on the wire (too large for a Number); compared as BigInt
+  let lastReadAckId = 0n;
+
   // ===== INITIALIZATION =====
   function initializeChatPage() {
     currentUserId = window.currentUserId || parseInt(document.querySelector('[data-user-id]')?.getAttribute('data-user-id'));
@@ -36,6 +46,16 @@
   }
 
   function initializeUI() {
+    // Fetch older pages when the user scrolls to the top of the conversation
+    const chatWindow = document.getElementById('chatWindow');
+    if (chatWindow) {
+      chatWindow.addEventListener('scroll', function() {
+        if (chatWindow.scrollTop < 40) {
+          loadOlderMessages();
+        }
+      });
+    }
+
     // Set up enter key for message input
     const msgInput = document.getElementById('msgInput');
     if (msgInput) {
@@ -49,33 +69,314 @@
   }
 
   // ===== WEBSOCKET CONNECTION =====
+  // Heartbeats in both directions (must match chat.websocket.heartbeat.*)
+  const HEARTBEAT_MS = 10000;
+  const RECONNECT_BASE_MS = 1000;
+  const RECONNECT_MAX_MS = 30000;
+  let reconnectAttempts = 0;
+  let reconnectTimer = null;
+  // Plain WebSocket first (/ws-native): no SockJS framing, binary frames and, in every
+  // current browser, permessage-deflate. If it never gets through (a proxy that drops
+  // the Upgrade, say) the page stays on SockJS (/ws) from then on.
+  let useSockJs = typeof WebSocket === 'undefined';
+  let nativeConnected = false;
+
+  function openSocket() {
+    if (useSockJs) {
+      return new SockJS('/ws');
+    }
+    const scheme = location.protocol === 'https:' ? 'wss://' : 'ws://';
+    return new WebSocket(scheme + location.host + '/ws-native');
+  }
+
   function connect() {
-    const socket = new SockJS('/ws');
+    const socket = openSocket();
     stomp = Stomp.over(socket);
     
     stomp.debug = null;
+    stomp.heartbeat.outgoing = HEARTBEAT_MS;
+    stomp.heartbeat.incoming = HEARTBEAT_MS;
     
-    stomp.connect({}, function(frame) {
+    stomp.connect(connectHeaders(socket), function(frame) {
       console.log('✅ WebSocket Connected: ' + frame);
       isConnected = true;
+      reconnectAttempts = 0;
+      if (socket instanceof WebSocket) {
+        nativeConnected = true;
+      }
       
-      stomp.subscribe('/topic/messages', function(messageOutput) {
-        try {
-          const message = JSON.parse(messageOutput.body);
-          handleIncomingMessage(message);
-        } catch (error) {
-          console.error('❌ Error parsing message:', error);
-        }
-      });
+      // Messages routed to this user's sessions only
+      stomp.subscribe('/user/queue/messages', onMessageFrame);
+      // Legacy broadcast mode (chat.websocket.delivery-mode=broadcast)
+      stomp.subscribe('/topic/messages', onMessageFrame);
+      // Persistence acknowledgements (chat.persistence.mode=write-behind)
+      stomp.subscribe('/user/queue/acks', onAckFrame);
+      // Rejected messages (e.g. recipient is not a friend)
+      stomp.subscribe('/user/queue/errors', onErrorFrame);
+      // Friends going online/offline
+      stomp.subscribe('/user/queue/presence', onPresenceFrame);
+      // Friends receiving/reading our messages
+      stomp.subscribe('/user/queue/receipts', onReceiptFrame);
       
       updateConnectionStatus(true);
+      // Messages sent while we were disconnected never reached this session
+      catchUpConversation();
       
     }, function(error) {
       console.error('❌ WebSocket connection error:', error);
       isConnected = false;
       updateConnectionStatus(false);
-      setTimeout(connect, 5000);
+      if (socket instanceof WebSocket && !nativeConnected) {
+        console.warn('Native WebSocket unavailable, falling back to SockJS');
+        useSockJs = true;
+        connect();
+        return;
+      }
+      scheduleReconnect();
     });
+    acceptBinaryFrames(socket);
+  }
+
+  // ===== CBOR FRAMES =====
+  // Native WebSocket sessions ask for CBOR payloads (chat.websocket.cbor.enabled);
+  // SockJS carries text only, so its sessions stay JSON
+  const textDecoder = new TextDecoder();
+
+  function connectHeaders(socket) {
+    return socket instanceof WebSocket ? { accept: 'application/cbor' } : {};
+  }
+
+  // stomp.js reads binary messages as text and splits them on NUL bytes, which CBOR
+  // payloads contain, so binary MESSAGE frames are parsed here and handed straight to
+  // their subscription. Anything else still goes through stomp.js.
+  function acceptBinaryFrames(socket) {
+    if (!(socket instanceof WebSocket)) {
+      return;
+    }
+    socket.binaryType = 'arraybuffer';
+    const stompOnMessage = socket.onmessage;
+    socket.onmessage = function(evt) {
+      if (evt.data instanceof ArrayBuffer) {
+        const frame = parseCborFrame(new Uint8Array(evt.data));
+        const callback = frame && stomp.subscriptions[frame.headers.subscription];
+        if (callback) {
+          // Counts as server activity for the heartbeat check, as in stomp.js
+          stomp.serverActivity = Date.now();
+          callback(frame);
+          return;
+        }
+      }
+      stompOnMessage(evt);
+    };
+  }
+
+  function parseCborFrame(bytes) {
+    let headerEnd = 0;
+    while (headerEnd + 1 < bytes.length && !(bytes[headerEnd] === 10 && bytes[headerEnd + 1] === 10)) {
+      headerEnd++;
+    }
+    const lines = textDecoder.decode(bytes.subarray(0, headerEnd)).split('\n');
+    const headers = {};
+    lines.slice(1).forEach(line => {
+      const colon = line.indexOf(':');
+      const name = line.substring(0, colon);
+      if (colon > 0 && !(name in headers)) {
+        headers[name] = line.substring(colon + 1);
+      }
+    });
+    if (lines[0] !== 'MESSAGE' || !(headers['content-type'] || '').startsWith('application/cbor')) {
+      return null;
+    }
+    const start = headerEnd + 2;
+    let end = headers['content-length'] ? start + parseInt(headers['content-length']) : bytes.indexOf(0, start);
+    if (end < 0) {
+      end = bytes.length;
+    }
+    return { command: 'MESSAGE', headers: headers, body: '', payload: cborDecode(bytes.subarray(start, end)) };
+  }
+
+  // The subset of CBOR (RFC 8949) Jackson writes for our DTOs
+  function cborDecode(bytes) {
+    const view = new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength);
+    let offset = 0;
+
+    function argument(info) {
+      let value;
+      if (info < 24) {
+        return info;
+      } else if (info === 24) {
+        value = view.getUint8(offset);
+        offset += 1;
+      } else if (info === 25) {
+        value = view.getUint16(offset);
+        offset += 2;
+      } else if (info === 26) {
+        value = view.getUint32(offset);
+        offset += 4;
+      } else if (info === 27) {
+        value = Number(view.getBigUint64(offset));
+        offset += 8;
+      } else if (info === 31) {
+        return -1; // indefinite length, ends with a 0xff break
+      } else {
+        throw new Error('Malformed CBOR');
+      }
+      return value;
+    }
+
+    function atBreak() {
+      if (view.getUint8(offset) === 0xff) {
+        offset++;
+        return true;
+      }
+      return false;
+    }
+
+    function item() {
+      const initial = view.getUint8(offset++);
+      const major = initial >> 5;
+      const info = initial & 31;
+      switch (major) {
+        case 0:
+          return argument(info);
+        case 1:
+          return -1 - argument(info);
+        case 2:
+        case 3: {
+          const length = argument(info);
+          if (length < 0) {
+            const chunks = [];
+            while (!atBreak()) {
+              chunks.push(item());
+            }
+            return major === 3 ? chunks.join('') : chunks;
+          }
+          const data = bytes.subarray(offset, offset + length);
+          offset += length;
+          return major === 3 ? textDecoder.decode(data) : data.slice();
+        }
+        case 4: {
+          const length = argument(info);
+          const array = [];
+          while (length < 0 ? !atBreak() : array.length < length) {
+            array.push(item());
+          }
+          return array;
+        }
+        case 5: {
+          const length = argument(info);
+          const object = {};
+          for (let i = 0; length < 0 ? !atBreak() : i < length; i++) {
+            const key = item();
+            object[key] = item();
+          }
+          return object;
+        }
+        case 6:
+          argument(info); // tags carry no meaning for us
+          return item();
+        default:
+          if (info === 20) return false;
+          if (info === 21) return true;
+          if (info === 22 || info === 23) return null;
+          if (info === 26) {
+            offset += 4;
+            return view.getFloat32(offset - 4);
+          }
+          if (info === 27) {
+            offset += 8;
+            return view.getFloat64(offset - 8);
+          }
+          throw new Error('Unsupported CBOR value ' + initial);
+      }
+    }
+
+    return item();
+  }
+
+  // Payload of a STOMP frame, CBOR or JSON
+  function frameBody(frame) {
+    return frame.payload !== undefined ? frame.payload : JSON.parse(frame.body);
+  }
+
+  // Exponential backoff with full jitter, so clients dropped by a restart don't all
+  // come back in the same second
+  function scheduleReconnect() {
+    if (reconnectTimer) {
+      return;
+    }
+    const ceiling = Math.min(RECONNECT_MAX_MS, RECONNECT_BASE_MS * Math.pow(2, reconnectAttempts));
+    const delay = Math.floor(Math.random() * ceiling);
+    reconnectAttempts++;
+    reconnectTimer = setTimeout(function() {
+      reconnectTimer = null;
+      connect();
+    }, delay);
+  }
+
+  function reconnectNow() {
+    if (reconnectTimer) {
+      clearTimeout(reconnectTimer);
+      reconnectTimer = null;
+    }
+    connect();
+  }
+
+  function onMessageFrame(messageOutput) {
+    try {
+      const message = frameBody(messageOutput);
+      handleIncomingMessage(message);
+    } catch (error) {
+      console.error('❌ Error parsing message:', error);
+    }
+  }
+
+  function onPresenceFrame(presenceOutput) {
+    try {
+      const presence = frameBody(presenceOutput);
+      const item = document.querySelector('.friend-item[data-id="' + presence.userId + '"]');
+      if (!item) return;
+      const status = presence.online ? 'Online' : 'Offline';
+      item.querySelector('.friend-status').textContent = status;
+      if (presence.userId === selectedFriendId) {
+        const chatFriendStatus = document.getElementById('chatFriendStatus');
+        if (chatFriendStatus) chatFriendStatus.textContent = status;
+      }
+    } catch (error) {
+      console.error('❌ Error parsing presence:', error);
+    }
+  }
+
+  function onErrorFrame(errorOutput) {
+    try {
+      const error = frameBody(errorOutput);
+      showNotification(error.message || "Message was not sent.", "error");
+    } catch (error) {
+      console.error('❌ Error parsing error frame:', error);
+    }
+  }
+
+  function onAckFrame(ackOutput) {
+    try {
+      const ack = frameBody(ackOutput);
+      if (!ack.persisted) {
+        console.error('❌ Message was not saved:', ack);
+        showNotification("A message could not be saved.", "error");
+      }
+    } catch (error) {
+      console.error('❌ Error parsing ack:', error);
+    }
+  }
+
+  function onReceiptFrame(receiptOutput) {
+    try {
+      const receipt = frameBody(receiptOutput);
+      if (receipt.readerId === selectedFriendId) {
+        markSentMessages(receipt.deliveredUpTo, receipt.readUpTo);
+      }
+    } catch (error) {
+      console.error('❌ Error parsing receipt:', error);
+    }
   }
 
   function handleIncomingMessage(message) {
@@ -87,6 +388,90 @@
       displayMessage(message, false);
       scrollToBottom();
     }
+    
+    if (message.receiverId === currentUserId && message.messageId) {
+      if (isRelevantMessage && !document.hidden) {
+        acknowledgeRead();
+      } else {
+        sendReceipt(message.senderId, message.messageId, 0);
+        incrementUnread(message.senderId);
+      }
+    }
+  }
+
+  // ===== UNREAD BADGES =====
+  // Rendered from the inbox on page load, then kept current from incoming messages
+  function unreadBadge(friendId) {
+    return document.querySelector('.friend-item[data-id="' + friendId + '"] .unread-badge');
+  }
+
+  function incrementUnread(friendId) {
+    const badge = unreadBadge(friendId);
+    if (badge) {
+      badge.textContent = (parseInt(badge.textContent) || 0) + 1;
+      badge.style.display = '';
+    }
+  }
+
+  function clearUnread(friendId) {
+    const badge = unreadBadge(friendId);
+    if (badge) {
+      badge.textContent = '';
+      badge.style.display = 'none';
+    }
+  }
+
+  // ===== RECEIPTS =====
+  // The server batches acks, so sending one per message is cheap
+  function sendReceipt(friendId, deliveredUpTo, readUpTo) {
+    if (!isConnected) {
+      return;
+    }
+    try {
+      stomp.send('/app/receipts', {}, JSON.stringify({
+        friendId: friendId,
+        deliveredUpTo: deliveredUpTo,
+        readUpTo: readUpTo
+      }));
+    } catch (error) {
+      console.error('❌ Error sending receipt:', error);
+    }
+  }
+
+  // Acknowledge everything the open conversation shows from the friend as read
+  function acknowledgeRead() {
+    if (!selectedFriendId || document.hidden) {
+      return;
+    }
+    const received = document.querySelectorAll('#chatWindow .message-bubble.received[data-message-id]');
+    if (received.length === 0) {
+      return;
+    }
+    const lastId = received[received.length - 1].getAttribute('data-message-id');
+    if (BigInt(lastId) > lastReadAckId) {
+      lastReadAckId = BigInt(lastId);
+      sendReceipt(selectedFriendId, lastId, lastId);
+    }
+    clearUnread(selectedFriendId);
+  }
+
+  function markSentMessages(deliveredUpTo, readUpTo) {
+    const delivered = BigInt(deliveredUpTo);
+    const read = BigInt(readUpTo);
+    document.querySelectorAll('#chatWindow .message-bubble.sent[data-message-id]').forEach(elem => {
+      const id = BigInt(elem.getAttribute('data-message-id'));
+      setReceiptStatus(elem, id <= read ? 'read' : id <= delivered ? 'delivered' : null);
+    });
+  }
+
+  function setReceiptStatus(elem, status) {
+    const indicator = elem.querySelector('.message-receipt');
+    if (!indicator || !status || indicator.classList.contains('read')) {
+      return;
+    }
+    indicator.className = 'message-receipt ' + status;
+    indicator.textContent = status === 'read' ? '✓✓' : '✓';
+    indicator.title = status === 'read' ? 'Read' : 'Delivered';
   }
 
   // ===== MESSAGE HANDLING =====
@@ -112,7 +497,8 @@
     const messageData = {
       senderId: currentUserId,
       receiverId: selectedFriendId,
-      content: content
+      content: content,
+      clientMessageId: currentUserId + '-' + Date.now() + '-' + Math.random().toString(36).slice(2, 8)
     };
 
     try {
@@ -140,6 +526,10 @@
       welcomeMsg.remove();
     }
     
+    chatWindow.appendChild(createMessageElement(message));
+  }
+
+  function createMessageElement(message) {
     const messageDiv = document.createElement('div');
     const isCurrentUser = message.senderId === currentUserId;
     
@@ -156,30 +546,49 @@
     }
     
     messageDiv.className = `message-bubble ${isCurrentUser ? 'sent' : 'received'}`;
+    if (message.messageId) {
+      messageDiv.setAttribute('data-message-id', message.messageId);
+    }
     messageDiv.innerHTML = `
       <div class="message-content">${escapeHtml(message.content)}</div>
-      <div class="message-time">${timestamp}</div>
+      <div class="message-time">${timestamp}${isCurrentUser ? '<span class="message-receipt"></span>' : ''}</div>
     `;
+    if (isCurrentUser) {
+      setReceiptStatus(messageDiv, message.read ? 'read' : message.delivered ? 'delivered' : null);
+    }
     
-    chatWindow.appendChild(messageDiv);
+    return messageDiv;
   }
 
-  function loadMessageHistory(friendId) {
-    if (!friendId) {
-      console.error('❌ No friend ID provided for message history');
-      return;
+  function fetchHistoryPage(friendId, beforeId) {
+    let url = `/api/messages/${friendId}/page?limit=${HISTORY_PAGE_SIZE}`;
+    if (beforeId) {
+      url += `&before=${beforeId}`;
     }
     
-    console.log('📚 Loading message history for friend ID:', friendId);
-    
-    const chatWindow = document.getElementById('chatWindow');
-    chatWindow.innerHTML = '<div class="loading-messages">Loading messages...</div>';
-    
-    fetch(`/api/messages/${friendId}`, {
+    return fetch(url, {
       method: 'GET',
       headers: { 'Content-Type': 'application/json' },
       credentials: 'same-origin'
     })
+    .then(response => {
+      if (!response.ok) {
+        throw new Error(`HTTP error! status: ${response.status}`);
+      }
+      return response.json();
+    });
+  }
+
+  // Fetch only the messages newer than the last one shown (delta mode)
+  function catchUpConversation() {
+    const friendId = selectedFriendId;
+    const shown = document.querySelectorAll('#chatWindow .message-bubble[data-message-id]');
+    if (!friendId || shown.length === 0) {
+      return;
+    }
+    const newestId = shown[shown.length - 1].getAttribute('data-message-id');
+    
+    fetch(`/api/messages/${friendId}?since=${newestId}`, { credentials: 'same-origin' })
     .then(response => {
       if (!response.ok) {
         throw new Error(`HTTP error! status: ${response.status}`);
@@ -187,9 +596,49 @@
       return response.json();
     })
     .then(messages => {
+      if (friendId !== selectedFriendId) {
+        return;
+      }
+      messages.forEach(message => {
+        if (!document.querySelector('#chatWindow [data-message-id="' + message.messageId + '"]')) {
+          displayMessage(message, false);
+        }
+      });
+      if (messages.length > 0) {
+        scrollToBottom();
+        acknowledgeRead();
+      }
+    })
+    .catch(error => {
+      console.error('❌ Error catching up on messages:', error);
+    });
+  }
+
+  function loadMessageHistory(friendId) {
+    if (!friendId) {
+      console.error('❌ No friend ID provided for message history');
+      return;
+    }
+    
+    console.log('📚 Loading message history for friend ID:', friendId);
+    
+    const chatWindow = document.getElementById('chatWindow');
+    chatWindow.innerHTML = '<div class="loading-messages">Loading messages...</div>';
+    oldestMessageId = null;
+    hasOlderMessages = false;
+    lastReadAckId = 0n;
+    
+    // Only the latest page is loaded up front, older pages follow on scroll
+    fetchHistoryPage(friendId, null)
+    .then(page => {
+      if (friendId !== selectedFriendId) {
+        return;
+      }
+      const messages = page.messages;
       console.log('📨 Loaded messages:', messages.length, 'messages');
       
       chatWindow.innerHTML = '';
+      hasOlderMessages = page.hasMore;
       
       if (messages.length === 0) {
         chatWindow.innerHTML = `
@@ -204,11 +653,13 @@
         return;
       }
       
+      oldestMessageId = messages[0].messageId;
       messages.forEach(message => {
         displayMessage(message, false);
       });
       
       scrollToBottom();
+      acknowledgeRead();
       console.log('✅ Message history loaded successfully');
       
     })
@@ -223,6 +674,40 @@
     });
   }
 
+  function loadOlderMessages() {
+    if (!selectedFriendId || !hasOlderMessages || loadingOlderMessages || !oldestMessageId) {
+      return;
+    }
+    
+    const friendId = selectedFriendId;
+    const chatWindow = document.getElementById('chatWindow');
+    loadingOlderMessages = true;
+    
+    fetchHistoryPage(friendId, oldestMessageId)
+    .then(page => {
+      if (friendId !== selectedFriendId || page.messages.length === 0) {
+        hasOlderMessages = page.hasMore && friendId === selectedFriendId;
+        return;
+      }
+      
+      // Prepend while keeping the currently visible message in place
+      const previousHeight = chatWindow.scrollHeight;
+      const fragment = document.createDocumentFragment();
+      page.messages.forEach(message => fragment.appendChild(createMessageElement(message)));
+      chatWindow.insertBefore(fragment, chatWindow.firstChild);
+      chatWindow.scrollTop += chatWindow.scrollHeight - previousHeight;
+      
+      oldestMessageId = page.messages[0].messageId;
+      hasOlderMessages = page.hasMore;
+    })
+    .catch(error => {
+      console.error('❌ Error loading older messages:', error);
+    })
+    .finally(() => {
+      loadingOlderMessages = false;
+    });
+  }
+
   // ===== FRIEND MANAGEMENT =====
   function selectFriend(elem) {
     const friendId = parseInt(elem.getAttribute('data-id'));
@@ -240,7 +725,7 @@
     
     // Update UI
     highlightSelectedFriend(elem);
-    updateChatHeader(friendName);
+    updateChatHeader(friendName, elem.querySelector('.friend-status').textContent.trim());
     enableChatInput();
     
     // Load message history
@@ -255,13 +740,13 @@
     selectedElem.classList.add('selected');
   }
 
-  function updateChatHeader(friendName) {
+  function updateChatHeader(friendName, friendStatus) {
     const chatFriendName = document.getElementById('chatFriendName');
     const chatFriendStatus = document.getElementById('chatFriendStatus');
     const chatFriendInitial = document.getElementById('chatFriendInitial');
     
     if (chatFriendName) chatFriendName.textContent = friendName;
-    if (chatFriendStatus) chatFriendStatus.textContent = 'Online';
+    if (chatFriendStatus) chatFriendStatus.textContent = friendStatus || 'Offline';
     if (chatFriendInitial) chatFriendInitial.textContent = friendName.charAt(0).toUpperCase();
   }
 
@@ -404,7 +889,9 @@
   // ===== EVENT LISTENERS =====
   document.addEventListener('visibilitychange', function() {
     if (!document.hidden && !isConnected) {
-      connect();
+      reconnectNow();
+    } else if (!document.hidden) {
+      acknowledgeRead();
     }
   });
 
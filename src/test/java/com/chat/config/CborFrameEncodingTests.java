@@ -0,0 +1,108 @@
+package com.chat.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Sessions that ask for CBOR get MESSAGE payloads re-encoded and written as binary
+ * WebSocket messages; everyone else keeps JSON text frames.
+ */
+class CborFrameEncodingTests {
+
+    private static final String JSON = "{\"messageId\":\"371234567890123456\",\"senderId\":1,\"receiverId\":2,"
+            + "\"content\":\"hello\",\"sentAt\":1718031234567,\"delivered\":false,\"read\":false}";
+
+    private final CborFrameEncoding encoding = new CborFrameEncoding(new ObjectMapper(), new SimpleMeterRegistry(), true);
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    @Test
+    void sessionsThatAskForCborGetCborPayloads() throws Exception {
+        connect("cbor-session", "application/cbor", new HashMap<>());
+        connect("json-session", null, new HashMap<>());
+
+        Message<?> cbor = encoding.preSend(frame("cbor-session"), channel);
+        assertThat(SimpMessageHeaderAccessor.wrap(cbor).getContentType()).isEqualTo(CborFrameEncoding.APPLICATION_CBOR);
+        byte[] payload = (byte[]) cbor.getPayload();
+        assertThat(payload.length).isLessThan(JSON.length());
+        JsonNode decoded = new CBORMapper().readTree(payload);
+        assertThat(decoded).isEqualTo(new ObjectMapper().readTree(JSON));
+
+        Message<?> json = encoding.preSend(frame("json-session"), channel);
+        assertThat(new String((byte[]) json.getPayload(), StandardCharsets.UTF_8)).isEqualTo(JSON);
+    }
+
+    @Test
+    void cborFramesAreWrittenAsBinaryAndSockJsSessionsStayText() throws Exception {
+        WebSocketSession raw = mock(WebSocketSession.class);
+        when(raw.getId()).thenReturn("native");
+        WebSocketHandler delegate = mock(WebSocketHandler.class);
+        encoding.decorate(delegate).afterConnectionEstablished(raw);
+        ArgumentCaptor<WebSocketSession> decorated = ArgumentCaptor.forClass(WebSocketSession.class);
+        verify(delegate).afterConnectionEstablished(decorated.capture());
+        connect("native", "application/cbor", new HashMap<>());
+
+        Message<?> cbor = encoding.preSend(frame("native"), channel);
+        StompHeaderAccessor stomp = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        stomp.setContentType(SimpMessageHeaderAccessor.wrap(cbor).getContentType());
+        stomp.setDestination("/user/queue/messages");
+        byte[] encoded = new StompEncoder().encode(stomp.getMessageHeaders(), (byte[]) cbor.getPayload());
+        decorated.getValue().sendMessage(new TextMessage(encoded));
+        ArgumentCaptor<WebSocketMessage<?>> sent = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(raw).sendMessage(sent.capture());
+        assertThat(sent.getValue()).isInstanceOf(BinaryMessage.class);
+
+        // SockJS sessions are marked at connection and never switch
+        Map<String, Object> sockJsAttributes = new HashMap<>();
+        sockJsAttributes.put(CborFrameEncoding.TEXT_ONLY_ATTRIBUTE, Boolean.TRUE);
+        connect("sockjs", "application/cbor", sockJsAttributes);
+        assertThat(encoding.isCborSession("sockjs")).isFalse();
+    }
+
+    private void connect(String sessionId, String accept, Map<String, Object> attributes) {
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connect.setSessionId(sessionId);
+        connect.setSessionAttributes(attributes);
+        if (accept != null) {
+            connect.setNativeHeader(CborFrameEncoding.ACCEPT_HEADER, accept);
+        }
+        encoding.onConnect(new SessionConnectEvent(this,
+                MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders())));
+    }
+
+    private static Message<byte[]> frame(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination("/user/queue/messages");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(JSON.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+}
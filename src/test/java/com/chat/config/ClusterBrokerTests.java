@@ -0,0 +1,226 @@
+package com.chat.config;
+
+import com.chat.ChatApplication;
+import com.chat.entity.User;
+import com.chat.repository.UserRepository;
+import com.chat.service.ClusterMessage;
+import com.chat.service.FriendService;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two application instances in one JVM, sharing a database and joined by the local
+ * cluster bus (chat.broker.mode=bus): a chat message sent by a session on one node is
+ * delivered to the receiver's session on the other, and a friendship removed on one is
+ * gone on the other. On the TCP bus a connection that fails the shared-secret handshake
+ * cannot inject frames.
+ */
+class ClusterBrokerTests {
+
+    @Test
+    void messageSentOnOneNodeReachesSessionOnTheOther() throws Exception {
+        String database = "jdbc:h2:mem:cluster-" + UUID.randomUUID()
+                + ";MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE";
+        try (ConfigurableApplicationContext node1 = startNode(database, "create-drop");
+             ConfigurableApplicationContext node2 = startNode(database, "none")) {
+            User alice = createUser(node1, "alice");
+            User bob = createUser(node1, "bob");
+            node1.getBean(FriendService.class).addFriend(alice.getUsername(), bob.getUsername());
+
+            BlockingQueue<Message<?>> bobFrames = new LinkedBlockingQueue<>();
+            AbstractSubscribableChannel outbound2 = node2.getBean("clientOutboundChannel", AbstractSubscribableChannel.class);
+            outbound2.subscribe(message -> {
+                if ("bob-session".equals(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()))
+                        && SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+                    bobFrames.add(message);
+                }
+            });
+            connect(node2, "bob-session", bob.getUsername(), "/user/queue/messages");
+
+            sendChat(node1, alice, bob, "hello from node 1");
+
+            Message<?> frame = bobFrames.poll(10, TimeUnit.SECONDS);
+            assertThat(frame).isNotNull();
+            assertThat(new String((byte[]) frame.getPayload(), StandardCharsets.UTF_8)).contains("hello from node 1");
+        }
+    }
+
+    @Test
+    void friendshipRemovedOnOneNodeIsSeenOnTheOther() {
+        String database = "jdbc:h2:mem:cluster-" + UUID.randomUUID()
+                + ";MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE";
+        try (ConfigurableApplicationContext node1 = startNode(database, "create-drop");
+             ConfigurableApplicationContext node2 = startNode(database, "none")) {
+            User alice = createUser(node1, "alice");
+            User bob = createUser(node1, "bob");
+            FriendService friends1 = node1.getBean(FriendService.class);
+            FriendService friends2 = node2.getBean(FriendService.class);
+            friends1.addFriend(alice.getUsername(), bob.getUsername());
+
+            // Node 2 reads the friendship before node 1 removes it
+            assertThat(friends2.getFriends(bob.getUserId())).hasSize(1);
+            assertThat(friends2.areFriends(bob.getUserId(), alice.getUserId())).isTrue();
+
+            friends1.removeFriend(alice.getUserId(), bob.getUserId());
+
+            assertThat(friends2.areFriends(bob.getUserId(), alice.getUserId())).isFalse();
+            assertThat(friends2.getFriends(bob.getUserId())).isEmpty();
+            assertThat(friends2.getFriendIds(bob.getUserId())).isEmpty();
+        }
+    }
+
+    @Test
+    void busConnectionWithoutTheSecretCannotInjectMessages() throws Exception {
+        String database = "jdbc:h2:mem:cluster-" + UUID.randomUUID()
+                + ";MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE";
+        int busPort = freePort();
+        String secret = "cluster-test-secret";
+        try (ConfigurableApplicationContext node = new SpringApplicationBuilder(ChatApplication.class)
+                .run("--server.port=0",
+                        "--spring.datasource.url=" + database,
+                        "--chat.broker.mode=bus",
+                        "--chat.broker.bus.transport=tcp",
+                        "--chat.broker.bus.port=" + busPort,
+                        "--chat.broker.bus.secret=" + secret)) {
+            User bob = createUser(node, "bob");
+            BlockingQueue<Message<?>> bobFrames = new LinkedBlockingQueue<>();
+            AbstractSubscribableChannel outbound = node.getBean("clientOutboundChannel", AbstractSubscribableChannel.class);
+            outbound.subscribe(message -> {
+                if ("bob-session".equals(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()))
+                        && SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+                    bobFrames.add(message);
+                }
+            });
+            connect(node, "bob-session", bob.getUsername(), "/user/queue/messages");
+            ClusterMessage forged = new ClusterMessage("intruder", "/user/" + bob.getUsername() + "/queue/messages",
+                    Map.of("content-type", "application/json"), "{\"content\":\"forged\"}".getBytes(StandardCharsets.UTF_8));
+
+            // A wrong answer to the challenge: the node closes the connection unread
+            try (Socket intruder = new Socket(InetAddress.getLoopbackAddress(), busPort)) {
+                DataInputStream in = new DataInputStream(intruder.getInputStream());
+                in.readFully(new byte[32]);
+                DataOutputStream out = new DataOutputStream(intruder.getOutputStream());
+                out.write(new byte[32]);
+                writeFrame(out, forged);
+                intruder.setSoTimeout(5000);
+                assertThat(closedByPeer(in)).isTrue();
+            }
+            assertThat(bobFrames.poll(1, TimeUnit.SECONDS)).isNull();
+
+            // The same frame from a peer that knows the secret is delivered
+            try (Socket peer = new Socket(InetAddress.getLoopbackAddress(), busPort)) {
+                byte[] challenge = new byte[32];
+                new DataInputStream(peer.getInputStream()).readFully(challenge);
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+                DataOutputStream out = new DataOutputStream(peer.getOutputStream());
+                out.write(mac.doFinal(challenge));
+                writeFrame(out, forged);
+                assertThat(bobFrames.poll(10, TimeUnit.SECONDS)).isNotNull();
+            }
+        }
+    }
+
+    // End of stream, or a reset when unread bytes were discarded on close
+    private static boolean closedByPeer(DataInputStream in) {
+        try {
+            return in.read() == -1;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static void writeFrame(DataOutputStream out, ClusterMessage message) throws IOException {
+        byte[] frame = message.encode();
+        out.writeInt(frame.length);
+        out.write(frame);
+        out.flush();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static ConfigurableApplicationContext startNode(String database, String ddlAuto) {
+        return new SpringApplicationBuilder(ChatApplication.class)
+                .run("--server.port=0",
+                        "--spring.datasource.url=" + database,
+                        "--spring.jpa.hibernate.ddl-auto=" + ddlAuto,
+                        "--chat.broker.mode=bus",
+                        "--chat.broker.bus.transport=local");
+    }
+
+    private static User createUser(ConfigurableApplicationContext node, String prefix) {
+        String name = prefix + "-" + System.nanoTime();
+        User user = new User();
+        user.setUsername(name);
+        user.setEmail(name + "@example.com");
+        user.setPasswordHash("x");
+        return node.getBean(UserRepository.class).save(user);
+    }
+
+    // A STOMP session as the WebSocket handler would register it, without opening a socket
+    private static void connect(ConfigurableApplicationContext node, String sessionId, String username,
+                                String destination) {
+        MessageChannel inbound = node.getBean("clientInboundChannel", MessageChannel.class);
+        Principal principal = () -> username;
+
+        SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        connect.setSessionId(sessionId);
+        connect.setUser(principal);
+        Message<byte[]> connectMessage = MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders());
+        inbound.send(connectMessage);
+        node.publishEvent(new SessionConnectedEvent(ClusterBrokerTests.class, connectMessage, principal));
+
+        SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        subscribe.setSessionId(sessionId);
+        subscribe.setSubscriptionId("sub-0");
+        subscribe.setDestination(destination);
+        subscribe.setUser(principal);
+        inbound.send(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+    }
+
+    private static void sendChat(ConfigurableApplicationContext node, User from, User to, String content) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId("alice-session");
+        Map<String, Object> sessionAttributes = new HashMap<>();
+        sessionAttributes.put(UserIdHandshakeInterceptor.USER_ID_ATTRIBUTE, from.getUserId());
+        accessor.setSessionAttributes(sessionAttributes);
+        accessor.setDestination("/app/chat");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setUser(from::getUsername);
+        String json = "{\"receiverId\":" + to.getUserId() + ",\"content\":\"" + content + "\"}";
+        node.getBean("clientInboundChannel", MessageChannel.class).send(MessageBuilder.createMessage(
+                json.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders()));
+    }
+}
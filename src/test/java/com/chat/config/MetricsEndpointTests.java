@@ -0,0 +1,60 @@
+package com.chat.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Actuator endpoints on a separate management port need no login; on the application
+ * port they sit behind the login like every other page.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "management.endpoints.web.exposure.include=health,prometheus",
+        "management.server.port=0"
+})
+@AutoConfigureObservability
+class MetricsEndpointTests {
+
+    @LocalServerPort
+    private int port;
+
+    @LocalManagementPort
+    private int managementPort;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void prometheusEndpointExposesChatMetricsOnTheManagementPort() throws Exception {
+        HttpResponse<String> response = get(managementPort, "/actuator/prometheus");
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body())
+                .contains("chat_message_fanout_seconds")
+                .contains("chat_history_query_seconds")
+                .contains("chat_friends_cache_total")
+                .contains("chat_stomp_channel_queue{")
+                .contains("chat_websocket_sessions");
+        assertThat(get(managementPort, "/actuator/health").statusCode()).isEqualTo(200);
+    }
+
+    @Test
+    void applicationPortSendsAnonymousScrapesToTheLogin() throws Exception {
+        HttpResponse<String> response = get(port, "/actuator/prometheus");
+        assertThat(response.statusCode()).isEqualTo(302);
+        assertThat(response.headers().firstValue("Location")).hasValueSatisfying(
+                location -> assertThat(location).endsWith("/login"));
+    }
+
+    private HttpResponse<String> get(int port, String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,105 @@
+package com.chat.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Slow-consumer policies: frames beyond max-pending are dropped, close the session,
+ * or are coalesced to the newest frame per key until the session catches up.
+ */
+class SlowConsumerGuardTests {
+
+    private static final String SESSION_ID = "s1";
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final MessageChannel channel = mock(MessageChannel.class);
+    private final WebSocketSession rawSession = mock(WebSocketSession.class);
+
+    @Test
+    void dropDiscardsFramesOverTheLimitUntilTheSessionCatchesUp() throws Exception {
+        SlowConsumerGuard guard = new SlowConsumerGuard(registry, "drop", 2);
+        WebSocketSession session = connect(guard);
+
+        assertThat(guard.preSend(frame(null), channel)).isNotNull();
+        assertThat(guard.preSend(frame(null), channel)).isNotNull();
+        assertThat(guard.preSend(frame(null), channel)).isNull();
+        assertThat(count("drop")).isEqualTo(1);
+
+        session.sendMessage(new TextMessage("written"));
+        assertThat(guard.getPending(SESSION_ID)).isEqualTo(1);
+        assertThat(guard.preSend(frame(null), channel)).isNotNull();
+    }
+
+    @Test
+    void disconnectClosesTheSession() throws Exception {
+        SlowConsumerGuard guard = new SlowConsumerGuard(registry, "disconnect", 1);
+        connect(guard);
+
+        guard.preSend(frame(null), channel);
+        assertThat(guard.preSend(frame(null), channel)).isNull();
+
+        verify(rawSession).close(any(CloseStatus.class));
+        assertThat(count("disconnect")).isEqualTo(1);
+    }
+
+    @Test
+    void coalesceSendsOnlyTheNewestFramePerKeyOnceDrained() throws Exception {
+        SlowConsumerGuard guard = new SlowConsumerGuard(registry, "coalesce", 1);
+        WebSocketSession session = connect(guard);
+
+        guard.preSend(frame(null), channel);
+        assertThat(guard.preSend(frame("presence-7"), channel)).isNull();
+        Message<?> newest = frame("presence-7");
+        assertThat(guard.preSend(newest, channel)).isNull();
+        // Frames without a key are never held back
+        assertThat(guard.preSend(frame(null), channel)).isNotNull();
+        assertThat(count("coalesce")).isEqualTo(2);
+
+        session.sendMessage(new TextMessage("first"));
+        verify(channel, times(0)).send(any());
+        session.sendMessage(new TextMessage("second"));
+        verify(channel).send(newest);
+    }
+
+    private WebSocketSession connect(SlowConsumerGuard guard) throws Exception {
+        when(rawSession.getId()).thenReturn(SESSION_ID);
+        when(rawSession.isOpen()).thenReturn(true);
+        WebSocketHandler delegate = mock(WebSocketHandler.class);
+        guard.decorate(delegate).afterConnectionEstablished(rawSession);
+
+        ArgumentCaptor<WebSocketSession> decorated = ArgumentCaptor.forClass(WebSocketSession.class);
+        verify(delegate).afterConnectionEstablished(decorated.capture());
+        return decorated.getValue();
+    }
+
+    private static Message<byte[]> frame(String coalesceKey) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(SESSION_ID);
+        if (coalesceKey != null) {
+            accessor.setNativeHeader(SlowConsumerGuard.COALESCE_KEY_HEADER, coalesceKey);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private double count(String action) {
+        return registry.get("chat.websocket.slow.consumer").tag("action", action).counter().count();
+    }
+}
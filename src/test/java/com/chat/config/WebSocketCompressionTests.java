@@ -0,0 +1,114 @@
+package com.chat.config;
+
+import com.chat.entity.User;
+import com.chat.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Both endpoints negotiate permessage-deflate until max-sessions compressed sessions are
+ * open; further sessions still connect, uncompressed.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "chat.websocket.compression.max-sessions=1")
+class WebSocketCompressionTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private WebSocketCompression compression;
+
+    private final StandardWebSocketClient client = new StandardWebSocketClient();
+
+    @Test
+    void compressesSessionsUpToTheLimit() throws Exception {
+        String cookie = login("deflate-user");
+
+        WebSocketSession first = connect("/ws-native", cookie);
+        assertThat(isCompressed(first)).isTrue();
+        // The server registers the session after the client's handshake has completed
+        awaitCompressedSessions(1);
+        assertThat(compression.getCompressedSessions()).isEqualTo(1);
+
+        // Over the limit: connects, without compression
+        WebSocketSession second = connect("/ws/000/sockjs-session/websocket", cookie);
+        assertThat(second.isOpen()).isTrue();
+        assertThat(isCompressed(second)).isFalse();
+
+        first.close();
+        awaitCompressedSessions(0);
+        // The SockJS transport negotiates it as well once there is room
+        WebSocketSession third = connect("/ws/000/sockjs-session-2/websocket", cookie);
+        assertThat(isCompressed(third)).isTrue();
+
+        second.close();
+        third.close();
+    }
+
+    private void awaitCompressedSessions(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (compression.getCompressedSessions() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    private WebSocketSession connect(String path, String cookie) throws Exception {
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.add("Cookie", cookie);
+        headers.setSecWebSocketExtensions(List.of(new WebSocketExtension(WebSocketCompression.PERMESSAGE_DEFLATE)));
+        return client.execute(new AbstractWebSocketHandler() {}, headers, URI.create("ws://localhost:" + port + path))
+                .get(10, TimeUnit.SECONDS);
+    }
+
+    private static boolean isCompressed(WebSocketSession session) {
+        return session.getExtensions().stream()
+                .anyMatch(e -> WebSocketCompression.PERMESSAGE_DEFLATE.equals(e.getName()));
+    }
+
+    private String login(String username) throws Exception {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPasswordHash(passwordEncoder.encode("secret-password"));
+        userRepository.save(user);
+
+        String form = "username=" + URLEncoder.encode(username, StandardCharsets.UTF_8) + "&password=secret-password";
+        HttpResponse<Void> response = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/login"))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString(form))
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+        return response.headers().allValues("Set-Cookie").stream()
+                .filter(c -> c.startsWith("JSESSIONID="))
+                .map(c -> c.substring(0, c.indexOf(';')))
+                .findFirst()
+                .orElseThrow();
+    }
+}
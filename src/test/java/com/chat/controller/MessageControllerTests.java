@@ -0,0 +1,174 @@
+package com.chat.controller;
+
+import com.chat.entity.Message;
+import com.chat.entity.User;
+import com.chat.repository.UserRepository;
+import com.chat.service.ChatUserDetails;
+import com.chat.service.FriendService;
+import com.chat.service.MessageRetentionService;
+import com.chat.service.MessageService;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class MessageControllerTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private FriendService friendService;
+
+    @Autowired
+    private MessageRetentionService retentionService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void unchangedHistoryIsNotModifiedAndSinceReturnsOnlyNewMessages() throws Exception {
+        User alice = newUser("etag-alice");
+        User bob = newUser("etag-bob");
+        friendService.addFriend(alice.getUsername(), bob.getUsername());
+        for (int i = 0; i < 3; i++) {
+            messageService.send(message(bob, alice, "hi " + i));
+        }
+        String history = "/api/messages/" + bob.getUserId();
+
+        String eTag = mockMvc.perform(get(history).with(as(alice)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("no-cache")))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(eTag).startsWith("W/\"");
+
+        mockMvc.perform(get(history).with(as(alice)).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+        // Pages share the conversation's validators
+        mockMvc.perform(get(history + "/page").with(as(alice)).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        Long newest = messageService.send(message(alice, bob, "reply")).getMessageId();
+        List<Message> before = messageService.getConversationHistory(alice.getUserId(), bob.getUserId());
+        String afterSend = mockMvc.perform(get(history).with(as(alice)).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(afterSend).isNotEqualTo(eTag);
+
+        mockMvc.perform(get(history).with(as(alice)).param("since", before.get(2).getMessageId().toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].content").value("reply"))
+                // Wire view, not the entity: string ids, epoch millis, no internal columns
+                .andExpect(jsonPath("$[0].messageId").value(newest.toString()))
+                .andExpect(jsonPath("$[0].sentAt").isNumber())
+                .andExpect(jsonPath("$[0].conversationKey").doesNotExist());
+        mockMvc.perform(get(history).with(as(alice)).param("since", newest.toString()))
+                .andExpect(jsonPath("$", hasSize(0)));
+
+        // Reading changes the unread state, so the history is no longer current
+        messageService.applyReceipts(alice.getUserId(), bob.getUserId(), 0, before.get(2).getMessageId());
+        mockMvc.perform(get(history).with(as(alice)).header(HttpHeaders.IF_NONE_MATCH, afterSend))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[2].read").value(true));
+    }
+
+    @Test
+    void receiptsAndThePurgeChangeTheHistoryETag() throws Exception {
+        User erin = newUser("version-erin");
+        User frank = newUser("version-frank");
+        friendService.addFriend(erin.getUsername(), frank.getUsername());
+        Message old = message(erin, frank, "from last year");
+        old.setSentAt(LocalDateTime.now().minusYears(1));
+        messageService.send(old);
+        Long latest = messageService.send(message(erin, frank, "hello")).getMessageId();
+        String history = "/api/messages/" + frank.getUserId();
+
+        String eTag = eTag(history, erin);
+        // Delivered only: no unread count moves, but the sender sees the delivered flag
+        messageService.applyReceipts(frank.getUserId(), erin.getUserId(), latest, 0);
+        String delivered = eTag(history, erin);
+        assertThat(delivered).isNotEqualTo(eTag);
+
+        // Removing an old message leaves the latest message and unread counts as they were
+        retentionService.purgeOlderThan(LocalDateTime.now().minusMonths(1));
+        mockMvc.perform(get(history).with(as(erin)).header(HttpHeaders.IF_NONE_MATCH, delivered))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)));
+    }
+
+    @Test
+    void pagingCursorSurvivesAsAString() throws Exception {
+        User carol = newUser("cursor-carol");
+        User dave = newUser("cursor-dave");
+        friendService.addFriend(carol.getUsername(), dave.getUsername());
+        for (int i = 0; i < 3; i++) {
+            messageService.send(message(dave, carol, "page " + i));
+        }
+        String page = "/api/messages/" + dave.getUserId() + "/page";
+
+        String json = mockMvc.perform(get(page).with(as(carol)).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages[0].messageId").isString())
+                .andReturn().getResponse().getContentAsString();
+        String cursor = JsonPath.read(json, "$.messages[0].messageId");
+        // Beyond what a JavaScript Number holds exactly
+        assertThat(Long.parseLong(cursor)).isGreaterThan(1L << 53);
+
+        mockMvc.perform(get(page).with(as(carol)).param("before", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(1)))
+                .andExpect(jsonPath("$.messages[0].content").value("page 0"));
+    }
+
+    private String eTag(String history, User u) throws Exception {
+        return mockMvc.perform(get(history).with(as(u)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    private static RequestPostProcessor as(User u) {
+        return user(new ChatUserDetails(u.getUserId(), u.getUsername(), "x", List.of()));
+    }
+
+    private static Message message(User from, User to, String content) {
+        Message m = new Message();
+        m.setSenderId(from.getUserId());
+        m.setReceiverId(to.getUserId());
+        m.setContent(content);
+        m.setSentAt(LocalDateTime.now());
+        return m;
+    }
+
+    private User newUser(String prefix) {
+        String name = prefix + "-" + System.nanoTime();
+        User u = new User();
+        u.setUsername(name);
+        u.setEmail(name + "@example.com");
+        u.setPasswordHash("x");
+        return userRepository.save(u);
+    }
+}
@@ -0,0 +1,310 @@
+package com.chat.controller;
+
+import com.chat.config.UserIdHandshakeInterceptor;
+import com.chat.dto.MessageView;
+import com.chat.entity.User;
+import com.chat.repository.UserRepository;
+import com.chat.service.FriendService;
+import com.chat.service.MessageDeliveryService;
+import com.chat.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures broker egress per chat message while the number of connected sessions grows.
+ * Sessions are simulated directly on the STOMP channels, so the test exercises the real
+ * controller, user destination resolution and simple broker without opening sockets.
+ */
+@SpringBootTest
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class MessageDeliveryLoadTests {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageDeliveryLoadTests.class);
+
+    private static final int MESSAGES_PER_ROUND = 20;
+    private static final int[] SESSION_COUNTS = {10, 100, 1000};
+
+    @Autowired
+    @Qualifier("clientInboundChannel")
+    private AbstractSubscribableChannel clientInboundChannel;
+
+    @Autowired
+    @Qualifier("clientOutboundChannel")
+    private AbstractSubscribableChannel clientOutboundChannel;
+
+    @Autowired
+    @Qualifier("clientInboundChannelExecutor")
+    private ThreadPoolTaskExecutor inboundExecutor;
+
+    @Autowired
+    @Qualifier("clientOutboundChannelExecutor")
+    private ThreadPoolTaskExecutor outboundExecutor;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private FriendService friendService;
+
+    private final AtomicLong egressBytes = new AtomicLong();
+    private final AtomicLong egressFrames = new AtomicLong();
+    private final MessageHandler egressCounter = message -> {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+            egressFrames.incrementAndGet();
+            egressBytes.addAndGet(((byte[]) message.getPayload()).length);
+        }
+    };
+
+    private User alice;
+    private User bob;
+    private int sessionSeq;
+
+    @BeforeEach
+    void setUp() {
+        alice = createUser("alice");
+        bob = createUser("bob");
+        friendService.addFriend(alice.getUsername(), bob.getUsername());
+    }
+
+    @Test
+    void routedDeliveryEgressStaysFlatAsSessionsGrow() throws Exception {
+        clientOutboundChannel.subscribe(egressCounter);
+        try {
+            // Alice has two tabs open, Bob one; everyone else is a bystander
+            connect(alice.getUsername());
+            connect(alice.getUsername());
+            connect(bob.getUsername());
+            int connected = 3;
+
+            List<Double> bytesPerMessage = new ArrayList<>();
+            for (int target : SESSION_COUNTS) {
+                for (; connected < target; connected++) {
+                    connect("bystander-" + connected);
+                }
+                awaitIdle();
+
+                long framesBefore = egressFrames.get();
+                long bytesBefore = egressBytes.get();
+                for (int i = 0; i < MESSAGES_PER_ROUND; i++) {
+                    sendChat(alice, bob, "hello " + i);
+                }
+                awaitIdle();
+
+                double framesPerMessage = (egressFrames.get() - framesBefore) / (double) MESSAGES_PER_ROUND;
+                double perMessage = (egressBytes.get() - bytesBefore) / (double) MESSAGES_PER_ROUND;
+                bytesPerMessage.add(perMessage);
+                log.info("user mode: sessions={} frames/msg={} egress bytes/msg={}",
+                        target, framesPerMessage, perMessage);
+
+                // Two sender tabs plus one receiver session, independent of the bystanders
+                assertThat(framesPerMessage).isEqualTo(3.0);
+            }
+
+            double smallest = bytesPerMessage.get(0);
+            assertThat(bytesPerMessage).allSatisfy(b -> assertThat(b).isBetween(smallest * 0.9, smallest * 1.1));
+        } finally {
+            clientOutboundChannel.unsubscribe(egressCounter);
+        }
+    }
+
+    @Test
+    void broadcastDeliveryEgressGrowsWithSessions() throws Exception {
+        MessageDeliveryService broadcast = new MessageDeliveryService(messagingTemplate, userService, objectMapper,
+                new SimpleMeterRegistry(), "broadcast");
+        clientOutboundChannel.subscribe(egressCounter);
+        try {
+            int connected = 0;
+            List<Double> bytesPerFrame = new ArrayList<>();
+            for (int target : SESSION_COUNTS) {
+                for (; connected < target; connected++) {
+                    connect("listener-" + connected);
+                }
+                awaitIdle();
+
+                long framesBefore = egressFrames.get();
+                long bytesBefore = egressBytes.get();
+                for (int i = 0; i < MESSAGES_PER_ROUND; i++) {
+                    MessageView view = new MessageView((long) i, alice.getUserId(), bob.getUserId(),
+                            "hello " + i, System.currentTimeMillis(), false, false, null);
+                    broadcast.deliver(view, alice.getUsername());
+                }
+                awaitIdle();
+
+                double framesPerMessage = (egressFrames.get() - framesBefore) / (double) MESSAGES_PER_ROUND;
+                double perMessage = (egressBytes.get() - bytesBefore) / (double) MESSAGES_PER_ROUND;
+                bytesPerFrame.add(perMessage / framesPerMessage);
+                log.info("broadcast mode: sessions={} frames/msg={} egress bytes/msg={}",
+                        target, framesPerMessage, perMessage);
+
+                // Every session gets every message, so bytes per message grow with the sessions
+                assertThat(framesPerMessage).isEqualTo((double) target);
+            }
+
+            double smallest = bytesPerFrame.get(0);
+            assertThat(bytesPerFrame).allSatisfy(b -> assertThat(b).isBetween(smallest * 0.9, smallest * 1.1));
+        } finally {
+            clientOutboundChannel.unsubscribe(egressCounter);
+        }
+    }
+
+    @Test
+    void messagesToNonFriendsAreRejectedToTheSenderOnly() throws Exception {
+        User mallory = createUser("mallory");
+        clientOutboundChannel.subscribe(egressCounter);
+        try {
+            connect(alice.getUsername());
+            connect(mallory.getUsername());
+            awaitIdle();
+
+            long framesBefore = egressFrames.get();
+            sendChat(mallory, alice, "hi stranger");
+            awaitIdle();
+
+            // Only the error frame on Mallory's /user/queue/errors, nothing reaches Alice
+            assertThat(egressFrames.get() - framesBefore).isEqualTo(1);
+
+            // Claiming to be Bob (Alice's friend) does not help: the session decides the sender
+            sendChat(mallory, bob.getUserId(), alice, "it's me, bob");
+            awaitIdle();
+            assertThat(egressFrames.get() - framesBefore).isEqualTo(2);
+
+            // Sending to Alice's queue directly would skip the controller: dropped unseen
+            sendRaw(mallory, "/user/" + alice.getUsername() + "/queue/messages",
+                    "{\"senderId\":" + bob.getUserId() + ",\"content\":\"forged\"}");
+            awaitIdle();
+            assertThat(egressFrames.get() - framesBefore).isEqualTo(2);
+
+            // A removed friend is refused at once, even with the sender's friend ids cached
+            connect(bob.getUsername());
+            awaitIdle();
+            assertThat(friendService.areFriends(bob.getUserId(), alice.getUserId())).isTrue();
+            friendService.removeFriend(bob.getUserId(), alice.getUserId());
+            long beforeRemoval = egressFrames.get();
+            sendChat(bob, alice, "still friends?");
+            awaitIdle();
+            // Only the error frame on Bob's /user/queue/errors
+            assertThat(egressFrames.get() - beforeRemoval).isEqualTo(1);
+        } finally {
+            clientOutboundChannel.unsubscribe(egressCounter);
+        }
+    }
+
+    private User createUser(String prefix) {
+        String name = prefix + "-" + System.nanoTime();
+        User user = new User();
+        user.setUsername(name);
+        user.setEmail(name + "@example.com");
+        user.setPasswordHash("x");
+        return userRepository.save(user);
+    }
+
+    private void connect(String username) {
+        String sessionId = "s" + (sessionSeq++);
+        Principal principal = () -> username;
+
+        SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        connect.setSessionId(sessionId);
+        connect.setUser(principal);
+        Message<byte[]> connectMessage = MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders());
+        clientInboundChannel.send(connectMessage);
+        eventPublisher.publishEvent(new SessionConnectedEvent(this, connectMessage, principal));
+
+        subscribe(sessionId, principal, "/user/queue/messages");
+        subscribe(sessionId, principal, "/topic/messages");
+        subscribe(sessionId, principal, "/user/queue/errors");
+    }
+
+    private void subscribe(String sessionId, Principal principal, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(destination);
+        accessor.setDestination(destination);
+        accessor.setUser(principal);
+        clientInboundChannel.send(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    private void sendChat(User from, User to, String content) {
+        sendChat(from, from.getUserId(), to, content);
+    }
+
+    private void sendChat(User from, Long claimedSenderId, User to, String content) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId("sender");
+        // What UserIdHandshakeInterceptor stores for an authenticated handshake
+        Map<String, Object> sessionAttributes = new HashMap<>();
+        sessionAttributes.put(UserIdHandshakeInterceptor.USER_ID_ATTRIBUTE, from.getUserId());
+        accessor.setSessionAttributes(sessionAttributes);
+        accessor.setDestination("/app/chat");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setUser(from::getUsername);
+        String json = "{\"senderId\":" + claimedSenderId + ",\"receiverId\":" + to.getUserId()
+                + ",\"content\":\"" + content + "\"}";
+        clientInboundChannel.send(MessageBuilder.createMessage(
+                json.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders()));
+    }
+
+    private void sendRaw(User from, String destination, String json) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId("sender");
+        accessor.setDestination(destination);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setUser(from::getUsername);
+        clientInboundChannel.send(MessageBuilder.createMessage(
+                json.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders()));
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        int idleChecks = 0;
+        while (idleChecks < 5 && System.currentTimeMillis() < deadline) {
+            boolean idle = isIdle(inboundExecutor) && isIdle(outboundExecutor);
+            idleChecks = idle ? idleChecks + 1 : 0;
+            Thread.sleep(20);
+        }
+    }
+
+    private static boolean isIdle(ThreadPoolTaskExecutor executor) {
+        return executor.getActiveCount() == 0 && executor.getThreadPoolExecutor().getQueue().isEmpty();
+    }
+}
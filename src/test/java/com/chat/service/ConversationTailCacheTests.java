@@ -0,0 +1,120 @@
+package com.chat.service;
+
+import com.chat.dto.MessagePage;
+import com.chat.entity.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationTailCacheTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MessageArchive archive = new MessageArchive("delete", "target/unused-archive", 1 << 20, 16, 10);
+    private final LocalDateTime start = LocalDateTime.now().minusHours(1);
+
+    @Test
+    void servesLatestPagesWithinTheTailAndKeepsOrder() {
+        ConversationTailCache cache = cache(10, 1 << 20);
+        String key = Message.conversationKey(1L, 2L);
+        assertThat(cache.latestPage(key, 5)).isNull();
+
+        List<Message> newestFirst = new ArrayList<>();
+        for (int i = 3; i >= 0; i--) {
+            newestFirst.add(message(100 + i, i));
+        }
+        cache.load(key, newestFirst, true);
+        // Whole conversation is cached: short pages are exact
+        MessagePage all = cache.latestPage(key, 5);
+        assertThat(all.hasMore).isFalse();
+        assertThat(ids(all.messages)).containsExactly(100L, 101L, 102L, 103L);
+
+        // Written through, one of them out of order and one twice
+        cache.append(List.of(message(110, 10), message(105, 5), message(110, 10)));
+        assertThat(ids(cache.latestPage(key, 3).messages)).containsExactly(103L, 105L, 110L);
+        assertThat(cache.latestPage(key, 3).hasMore).isTrue();
+
+        // Overflowing the ring buffer drops the oldest and the tail stops being complete
+        for (int i = 0; i < 10; i++) {
+            cache.append(List.of(message(200 + i, 20 + i)));
+        }
+        assertThat(cache.fullConversation(key)).isNull();
+        assertThat(cache.latestPage(key, 10)).isNull();
+        assertThat(ids(cache.latestPage(key, 9).messages)).startsWith(201L).endsWith(209L);
+
+        double hits = registry.get("chat.history.tail.cache").tag("result", "hit").counter().count();
+        double misses = registry.get("chat.history.tail.cache").tag("result", "miss").counter().count();
+        assertThat(hits).isEqualTo(4);
+        assertThat(misses).isEqualTo(3);
+    }
+
+    @Test
+    void leastRecentlyUsedConversationsAreEvictedOverTheByteCap() {
+        // Room for roughly two conversations of five messages
+        ConversationTailCache cache = cache(5, 2 * 5 * 200);
+        for (long friend = 2; friend <= 4; friend++) {
+            List<Message> tail = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                tail.add(message(1L, friend, friend * 100 + i, i));
+            }
+            cache.append(tail);
+            if (friend == 3) {
+                // Touch the first conversation so the second becomes the eldest
+                cache.latestPage(Message.conversationKey(1L, 2L), 1);
+            }
+        }
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.latestPage(Message.conversationKey(1L, 2L), 1)).isNotNull();
+        assertThat(cache.latestPage(Message.conversationKey(1L, 3L), 1)).isNull();
+        assertThat(cache.getResidentBytes()).isPositive().isLessThanOrEqualTo(2 * 5 * 200);
+        assertThat(registry.get("chat.history.tail.cache.bytes").gauge().value())
+                .isEqualTo(cache.getResidentBytes());
+    }
+
+    @Test
+    void readersGetCopiesThatReceiptsDoNotChange() {
+        ConversationTailCache cache = cache(10, 1 << 20);
+        String key = Message.conversationKey(1L, 2L);
+        cache.load(key, List.of(message(101, 1), message(100, 0)), true);
+        List<Message> full = cache.fullConversation(key);
+        List<Message> page = cache.latestPage(key, 5).messages;
+        List<Message> since = cache.messagesSince(key, 100);
+
+        cache.applyReceipts(key, 2L, 101, 101);
+
+        assertThat(full).noneMatch(Message::isRead);
+        assertThat(page).noneMatch(Message::isRead);
+        assertThat(since).noneMatch(Message::isDelivered);
+        assertThat(cache.fullConversation(key)).allMatch(m -> m.isRead() && m.isDelivered());
+        // Changing a copy does not reach the cache either
+        cache.latestPage(key, 1).messages.get(0).setContent("changed");
+        assertThat(cache.latestPage(key, 1).messages.get(0).getContent()).isEqualTo("m101");
+    }
+
+    private ConversationTailCache cache(int capacity, long maxBytes) {
+        return new ConversationTailCache(archive, registry, true, capacity, maxBytes, "simple");
+    }
+
+    private Message message(long id, int second) {
+        return message(1L, 2L, id, second);
+    }
+
+    private Message message(long from, long to, long id, int second) {
+        Message m = new Message();
+        m.setMessageId(id);
+        m.setSenderId(from);
+        m.setReceiverId(to);
+        m.setConversationKey(Message.conversationKey(from, to));
+        m.setContent("m" + id);
+        m.setSentAt(start.plusSeconds(second));
+        return m;
+    }
+
+    private static List<Long> ids(List<Message> messages) {
+        return messages.stream().map(Message::getMessageId).toList();
+    }
+}
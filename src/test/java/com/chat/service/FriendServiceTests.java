@@ -0,0 +1,122 @@
+package com.chat.service;
+
+import com.chat.dto.FriendSummary;
+import com.chat.entity.Friend;
+import com.chat.entity.User;
+import com.chat.repository.FriendRepository;
+import com.chat.repository.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class FriendServiceTests {
+
+    @Autowired
+    private FriendService friendService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private FriendRepository friendRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void friendListOfFiveHundredLoadsInOneQueryAndIsCached() {
+        User owner = userRepository.save(user("owner"));
+        List<User> others = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            others.add(user("friend" + i));
+        }
+        List<Friend> friendships = new ArrayList<>();
+        for (User friend : userRepository.saveAll(others)) {
+            friendships.add(new Friend(owner.getUserId(), friend.getUserId()));
+            friendships.add(new Friend(friend.getUserId(), owner.getUserId()));
+        }
+        friendRepository.saveAll(friendships);
+
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+        List<FriendSummary> friends = friendService.getFriends(owner.getUserId());
+        assertThat(friends).hasSize(500);
+        assertThat(stats.getPrepareStatementCount()).isEqualTo(1);
+
+        stats.clear();
+        assertThat(friendService.getFriends(owner.getUserId())).hasSize(500);
+        assertThat(stats.getPrepareStatementCount()).isZero();
+
+        // Adding a friend drops the cached list of both users
+        userRepository.save(user("latecomer"));
+        assertThat(friendService.addFriend("owner", "latecomer")).isTrue();
+        assertThat(friendService.getFriends(owner.getUserId())).hasSize(501)
+                .extracting(f -> f.username).contains("latecomer");
+    }
+
+    @Test
+    void listLoadedBeforeARemovalCommitsIsNotKept() {
+        User ann = userRepository.save(user("race-ann"));
+        User ben = userRepository.save(user("race-ben"));
+        friendService.addFriend("race-ann", "race-ben");
+        assertThat(friendService.getFriendIds(ann.getUserId())).contains(ben.getUserId());
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            friendService.removeFriend(ann.getUserId(), ben.getUserId());
+            // Another request reads the committed rows, still friends, while the removal is open
+            long[] seen = CompletableFuture.supplyAsync(() -> friendService.getFriendIds(ann.getUserId())).join();
+            assertThat(seen).contains(ben.getUserId());
+        });
+
+        assertThat(friendService.areFriends(ann.getUserId(), ben.getUserId())).isFalse();
+        assertThat(friendService.getFriendIds(ann.getUserId())).doesNotContain(ben.getUserId());
+    }
+
+    @Test
+    void areFriendsAgreesWithAndWithoutTheCache() {
+        User probe = userRepository.save(user("probe"));
+        List<User> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            batch.add(user("probe-friend" + i));
+        }
+        List<Friend> friendships = new ArrayList<>();
+        Long last = null;
+        for (User friend : userRepository.saveAll(batch)) {
+            friendships.add(new Friend(probe.getUserId(), friend.getUserId()));
+            last = friend.getUserId();
+        }
+        friendRepository.saveAll(friendships);
+
+        // Primary key probe, then the adjacency cache
+        assertThat(friendService.areFriends(probe.getUserId(), last)).isTrue();
+        assertThat(friendService.areFriends(probe.getUserId(), -1L)).isFalse();
+        friendService.getFriendIds(probe.getUserId());
+        assertThat(friendService.areFriends(probe.getUserId(), last)).isTrue();
+        assertThat(friendService.areFriends(probe.getUserId(), -1L)).isFalse();
+    }
+
+    private static User user(String username) {
+        User u = new User();
+        u.setUsername(username);
+        u.setEmail(username + "@example.com");
+        u.setPasswordHash("x");
+        u.setLastSeen(LocalDateTime.now());
+        return u;
+    }
+}
@@ -0,0 +1,100 @@
+package com.chat.service;
+
+import com.chat.dto.InboxEntry;
+import com.chat.entity.Message;
+import com.chat.entity.User;
+import com.chat.repository.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "chat.presence.flush-interval-ms=3600000",
+        "chat.websocket.reaper-interval-ms=3600000"
+})
+class InboxServiceTests {
+
+    @Autowired
+    private InboxService inboxService;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private FriendService friendService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void inboxTracksLatestMessageAndUnreadCount() {
+        User alice = user("inbox-alice");
+        User bob = user("inbox-bob");
+        User carol = user("inbox-carol");
+        friendService.addFriend(alice.getUsername(), bob.getUsername());
+        friendService.addFriend(alice.getUsername(), carol.getUsername());
+
+        List<Long> fromBob = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            fromBob.add(messageService.send(message(bob, alice, "bob " + i)).getMessageId());
+        }
+        // Write-behind batches update the summaries once per conversation
+        messageService.saveBatch(List.of(message(carol, alice, "carol 0"), message(alice, carol, "x".repeat(500))));
+        messageService.send(message(alice, bob, "alice reply"));
+
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+        List<InboxEntry> inbox = inboxService.getInbox(alice.getUserId());
+        assertThat(stats.getPrepareStatementCount()).isEqualTo(1);
+
+        // Most recent conversation first
+        assertThat(inbox).extracting(e -> e.friendId).containsExactly(bob.getUserId(), carol.getUserId());
+        InboxEntry withBob = inbox.get(0);
+        assertThat(withBob.username).isEqualTo(bob.getUsername());
+        assertThat(withBob.lastPreview).isEqualTo("alice reply");
+        assertThat(withBob.lastSenderId).isEqualTo(alice.getUserId());
+        assertThat(withBob.unreadCount).isEqualTo(5);
+        InboxEntry withCarol = inbox.get(1);
+        assertThat(withCarol.lastPreview).hasSize(100);
+        assertThat(withCarol.unreadCount).isEqualTo(1);
+        // Bob has not received anything
+        assertThat(inboxService.getInbox(bob.getUserId()).get(0).unreadCount).isEqualTo(1);
+
+        // Reading up to the third message leaves two unread
+        messageService.applyReceipts(alice.getUserId(), bob.getUserId(), fromBob.get(4), fromBob.get(2));
+        assertThat(inboxService.getInbox(alice.getUserId()).get(0).unreadCount).isEqualTo(2);
+        messageService.applyReceipts(alice.getUserId(), bob.getUserId(), 0, fromBob.get(4));
+        assertThat(inboxService.getInbox(alice.getUserId()).get(0).unreadCount).isZero();
+    }
+
+    private static Message message(User from, User to, String content) {
+        Message m = new Message();
+        m.setSenderId(from.getUserId());
+        m.setReceiverId(to.getUserId());
+        m.setContent(content);
+        m.setSentAt(LocalDateTime.now());
+        return m;
+    }
+
+    private User user(String prefix) {
+        String name = prefix + "-" + System.nanoTime();
+        User u = new User();
+        u.setUsername(name);
+        u.setEmail(name + "@example.com");
+        u.setPasswordHash("x");
+        return userRepository.save(u);
+    }
+}
@@ -0,0 +1,181 @@
+package com.chat.service;
+
+import com.chat.dto.MessagePage;
+import com.chat.entity.Message;
+import com.chat.repository.MessageRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "chat.retention.mode=archive",
+        "chat.archive.dir=${java.io.tmpdir}/chat-archive-${random.uuid}",
+        "chat.archive.block-messages=64",
+        "chat.retention.chunk-size=250",
+        "chat.retention.max-rows-per-second=0"
+})
+class MessageArchiveTests {
+
+    @Autowired
+    private MessageRetentionService retentionService;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MessageArchive archive;
+
+    @Test
+    void archivedMessagesStayReachableThroughHistoryPaging() {
+        long frank = 7001L, grace = 7002L;
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(30).truncatedTo(ChronoUnit.SECONDS);
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            batch.add(message(i % 2 == 0 ? frank : grace, i % 2 == 0 ? grace : frank, "archived " + i, cutoff.minusMinutes(600 - i)));
+        }
+        for (int i = 0; i < 30; i++) {
+            batch.add(message(frank, grace, "hot " + i, cutoff.plusMinutes(i + 1)));
+        }
+        List<Long> sent = messageService.saveBatch(batch).stream().map(Message::getMessageId).toList();
+
+        assertThat(retentionService.purgeOlderThan(cutoff).rowsDeleted()).isEqualTo(600);
+        assertThat(messageRepository.findConversation(Message.conversationKey(frank, grace))).hasSize(30);
+
+        // Walk back from the newest page; the walk crosses from the table into the archive
+        MessagePage page = messageService.getConversationPage(frank, grace, null, null, 50);
+        List<Long> walked = new ArrayList<>(ids(page));
+        while (page.hasMore) {
+            page = messageService.getConversationPage(grace, frank, page.messages.get(0).getMessageId(), null, 50);
+            walked.addAll(0, ids(page));
+        }
+        assertThat(walked).containsExactlyElementsOf(sent);
+
+        Message oldest = messageService.getConversationPage(frank, grace, sent.get(1), null, 10).messages.get(0);
+        assertThat(oldest.getMessageId()).isEqualTo(sent.get(0));
+        assertThat(oldest.getContent()).isEqualTo("archived 0");
+        assertThat(oldest.getSentAt()).isEqualTo(batch.get(0).getSentAt());
+    }
+
+    @Test
+    void messagesPurgedOutOfIdOrderAreAllArchived() {
+        long heidi = 7101L, ivan = 7102L;
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(60).truncatedTo(ChronoUnit.SECONDS);
+        // Each message is sent a minute before the previous one: the purge's sentAt chunks
+        // reach the highest ids first and the lowest ids in a later chunk
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            batch.add(message(heidi, ivan, "reversed " + i, cutoff.minusMinutes(i + 1)));
+        }
+        List<Long> sent = messageService.saveBatch(batch).stream().map(Message::getMessageId).toList();
+        assertThat(sent).isSorted();
+
+        assertThat(retentionService.purgeOlderThan(cutoff).rowsDeleted()).isEqualTo(300);
+
+        List<Long> archived = archive.readBefore(Message.conversationKey(heidi, ivan), null, 1000).stream()
+                .map(Message::getMessageId).toList();
+        assertThat(archived).containsExactlyElementsOf(reversed(sent));
+        // A page from the middle reads across the overlapping blocks in id order
+        assertThat(archive.readBefore(Message.conversationKey(heidi, ivan), sent.get(100), 10).stream()
+                .map(Message::getMessageId).toList())
+                .containsExactlyElementsOf(reversed(sent.subList(90, 100)));
+    }
+
+    @Test
+    void tornTailOfASegmentIsCutOffOnOpen() throws IOException {
+        Path dir = Files.createTempDirectory("chat-archive-torn");
+        String key = Message.conversationKey(7201L, 7202L);
+        MessageArchive first = standalone(dir, 10);
+        first.append(key, archived(1, 8));
+        first.close();
+
+        // A crash in the middle of the next append: half a block, half an index entry
+        Path segment = dir.resolve(key).resolve("00000000.seg");
+        Path index = dir.resolve(key).resolve("00000000.idx");
+        long segmentSize = Files.size(segment);
+        Files.write(segment, new byte[7], StandardOpenOption.APPEND);
+        Files.write(index, new byte[5], StandardOpenOption.APPEND);
+
+        MessageArchive reopened = standalone(dir, 10);
+        assertThat(ids(reopened.readBefore(key, null, 100))).containsExactlyElementsOf(descending(1, 8));
+        assertThat(Files.size(segment)).isEqualTo(segmentSize);
+        assertThat(Files.size(index) % 32).isZero();
+
+        // Appends after the repair stay readable, in this and in a fresh instance
+        assertThat(reopened.append(key, archived(9, 12))).containsExactlyInAnyOrderElementsOf(ascending(9, 12));
+        reopened.close();
+        assertThat(ids(standalone(dir, 10).readBefore(key, null, 100))).containsExactlyElementsOf(descending(1, 12));
+    }
+
+    @Test
+    void leastRecentlyUsedConversationsAreClosed() throws IOException {
+        MessageArchive bounded = standalone(Files.createTempDirectory("chat-archive-lru"), 2);
+        for (long user = 7301L; user <= 7305L; user++) {
+            bounded.append(Message.conversationKey(user, 7300L), archived(user * 10, user * 10 + 3));
+        }
+        assertThat(bounded.getOpenConversations()).isEqualTo(2);
+
+        // A closed conversation is reopened from disk on the next read
+        assertThat(ids(bounded.readBefore(Message.conversationKey(7301L, 7300L), null, 10)))
+                .containsExactlyElementsOf(descending(73010, 73013));
+        assertThat(bounded.getOpenConversations()).isEqualTo(2);
+    }
+
+    private static MessageArchive standalone(Path dir, int maxOpenConversations) {
+        return new MessageArchive("archive", dir.toString(), 1 << 20, 4, maxOpenConversations);
+    }
+
+    private static List<Message> archived(long firstId, long lastId) {
+        return LongStream.rangeClosed(firstId, lastId).mapToObj(id -> {
+            Message m = message(7201L, 7202L, "archived " + id, LocalDateTime.now());
+            m.setMessageId(id);
+            return m;
+        }).toList();
+    }
+
+    private static List<Long> ascending(long from, long to) {
+        return LongStream.rangeClosed(from, to).boxed().toList();
+    }
+
+    private static List<Long> descending(long from, long to) {
+        return reversed(ascending(from, to));
+    }
+
+    private static List<Long> ids(List<Message> messages) {
+        return messages.stream().map(Message::getMessageId).toList();
+    }
+
+    private static Message message(long from, long to, String content, LocalDateTime sentAt) {
+        Message m = new Message();
+        m.setSenderId(from);
+        m.setReceiverId(to);
+        m.setContent(content);
+        m.setSentAt(sentAt);
+        return m;
+    }
+
+    private static List<Long> reversed(List<Long> ids) {
+        List<Long> copy = new ArrayList<>(ids);
+        Collections.reverse(copy);
+        return copy;
+    }
+
+    private static List<Long> ids(MessagePage page) {
+        return page.messages.stream().map(Message::getMessageId).toList();
+    }
+}
@@ -0,0 +1,82 @@
+package com.chat.service;
+
+import com.chat.entity.Message;
+import com.chat.entity.SnowflakeIdGenerator;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that message inserts are batched now that ids are allocated before the insert.
+ * Insert throughput per batch size is measured by MessageInsertBenchmark.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class MessageInsertBatchingTests {
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void batchedSavesUseOneStatementPerBatch() {
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+
+        messageService.saveBatch(messages(100, 8001L, 8002L));
+
+        // One prepared INSERT executed as a JDBC batch instead of 100 round trips,
+        // plus one conversation summary UPDATE for the whole batch
+        assertThat(stats.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void statementCountDoesNotGrowWithBatchSize() {
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        for (int batchSize : new int[] {1, 10, 100}) {
+            stats.clear();
+            messageService.saveBatch(messages(batchSize, 8101L, 8102L));
+            assertThat(stats.getPrepareStatementCount()).as("statements for a batch of %d", batchSize).isEqualTo(2);
+            assertThat(stats.getEntityInsertCount()).isEqualTo(batchSize);
+        }
+    }
+
+    @Test
+    void idsAreMonotonicAndTimeOrdered() {
+        long before = System.currentTimeMillis();
+        Set<Long> seen = new HashSet<>();
+        long previous = 0;
+        for (int i = 0; i < 100_000; i++) {
+            long id = SnowflakeIdGenerator.nextId();
+            assertThat(id).isGreaterThan(previous);
+            assertThat(seen.add(id)).isTrue();
+            previous = id;
+        }
+        assertThat(SnowflakeIdGenerator.timestampOf(previous)).isBetween(before, System.currentTimeMillis() + 100);
+    }
+
+    private static List<Message> messages(int count, long from, long to) {
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Message m = new Message();
+            m.setSenderId(from);
+            m.setReceiverId(to);
+            m.setContent("batched " + i);
+            m.setSentAt(LocalDateTime.now());
+            messages.add(m);
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,222 @@
+package com.chat.service;
+
+import com.chat.entity.Message;
+import com.chat.repository.MessageRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "chat.persistence.mode=write-behind",
+        "chat.persistence.max-batch-size=50",
+        "chat.persistence.queue-capacity=100",
+        "chat.persistence.enqueue-timeout-ms=50"
+})
+class MessagePersistencePipelineTests {
+
+    @Autowired
+    private MessagePersistencePipeline pipeline;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("brokerChannel")
+    private AbstractSubscribableChannel brokerChannel;
+
+    @Test
+    void queuedMessagesAreWrittenInBatches() throws Exception {
+        String key = Message.conversationKey(7001L, 7002L);
+        int total = 1000;
+        for (int i = 0; i < total; i++) {
+            pipeline.submit(message(7001L, 7002L, "queued " + i), null, null);
+        }
+
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (messageRepository.findConversation(key).size() < total && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        assertThat(messageRepository.findConversation(key)).hasSize(total);
+        assertThat(pipeline.getQueueDepth()).isZero();
+
+        DistributionSummary batches = registry.get("chat.persistence.batch.size").summary();
+        assertThat(batches.max()).isLessThanOrEqualTo(50);
+        // Fewer commits than messages means the writer actually grouped them
+        assertThat(batches.count()).isLessThan(total);
+    }
+
+    @Test
+    void everyMessageIsAcknowledgedAndOnlyTheBadOneFails() throws Exception {
+        Message stored = messageService.send(message(7101L, 7102L, "stored"));
+        double failedBefore = registry.get("chat.persistence.messages").tag("result", "failed").counter().count();
+
+        AckCapture acks = new AckCapture("ack-sender");
+        brokerChannel.subscribe(acks);
+        try {
+            acks.holdWriter();
+            // Queued behind the held writer, so all eleven are written as one batch
+            List<Message> good = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                Message m = message(7101L, 7102L, "good " + i);
+                good.add(m);
+                pipeline.submit(m, "ack-sender", "good-" + i);
+            }
+            // Reuses a stored id, so its insert fails and takes the batch down with it
+            Message duplicate = message(7101L, 7102L, "duplicate");
+            duplicate.setMessageId(stored.getMessageId());
+            pipeline.submit(duplicate, "ack-sender", "bad");
+            assertThat(pipeline.getQueueDepth()).isEqualTo(11);
+            acks.releaseWriter();
+
+            acks.await(12);
+            for (int i = 0; i < 10; i++) {
+                JsonNode ack = acks.get("good-" + i);
+                assertThat(ack.get("persisted").asBoolean()).isTrue();
+                assertThat(ack.get("messageId").asText()).isEqualTo(String.valueOf(good.get(i).getMessageId()));
+                assertThat(ack.get("receiverId").asLong()).isEqualTo(7102L);
+            }
+            assertThat(acks.get("bad").get("persisted").asBoolean()).isFalse();
+        } finally {
+            acks.releaseWriter();
+            brokerChannel.unsubscribe(acks);
+        }
+
+        assertThat(messageRepository.findConversation(Message.conversationKey(7101L, 7102L)))
+                .extracting(Message::getContent)
+                .contains("good 0", "good 9")
+                .doesNotContain("duplicate")
+                .hasSize(11);
+        assertThat(registry.get("chat.persistence.messages").tag("result", "failed").counter().count())
+                .isEqualTo(failedBefore + 1);
+    }
+
+    @Test
+    void callerWritesItsOwnMessageWhenTheQueueIsFull() throws Exception {
+        String key = Message.conversationKey(7201L, 7202L);
+        double overflowBefore = registry.get("chat.persistence.overflow").counter().count();
+
+        AckCapture acks = new AckCapture("full-sender");
+        brokerChannel.subscribe(acks);
+        try {
+            acks.holdWriter();
+            for (int i = 0; i < 110; i++) {
+                pipeline.submit(message(7201L, 7202L, "full " + i), "full-sender", "full-" + i);
+            }
+
+            // The first 100 fill the queue; the last 10 waited, then were stored by this thread
+            assertThat(pipeline.getQueueDepth()).isEqualTo(100);
+            assertThat(registry.get("chat.persistence.overflow").counter().count()).isEqualTo(overflowBefore + 10);
+            assertThat(messageRepository.findConversation(key))
+                    .extracting(Message::getContent)
+                    .containsExactlyInAnyOrder("full 100", "full 101", "full 102", "full 103", "full 104",
+                            "full 105", "full 106", "full 107", "full 108", "full 109");
+            assertThat(acks.get("full-109").get("persisted").asBoolean()).isTrue();
+            assertThat(acks.get("full-0")).isNull();
+
+            acks.releaseWriter();
+            acks.await(111);
+        } finally {
+            acks.releaseWriter();
+            brokerChannel.unsubscribe(acks);
+        }
+
+        assertThat(messageRepository.findConversation(key)).hasSize(110);
+        assertThat(pipeline.getQueueDepth()).isZero();
+    }
+
+    private static Message message(Long senderId, Long receiverId, String content) {
+        Message m = new Message();
+        m.setSenderId(senderId);
+        m.setReceiverId(receiverId);
+        m.setContent(content);
+        m.setSentAt(LocalDateTime.now());
+        return m;
+    }
+
+    // Collects the acks of one sender by client id. The writer sends acks on its own thread
+    // after each commit, so holding it on the ack of a gate message keeps it from draining
+    // the queue until the test has filled it.
+    private class AckCapture implements MessageHandler {
+
+        private final String username;
+        private final Map<String, JsonNode> acks = new ConcurrentHashMap<>();
+        private final CountDownLatch writerHeld = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        AckCapture(String username) {
+            this.username = username;
+        }
+
+        @Override
+        public void handleMessage(org.springframework.messaging.Message<?> message) {
+            if (!("/user/" + username + MessagePersistencePipeline.ACK_DESTINATION)
+                    .equals(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))) {
+                return;
+            }
+            try {
+                JsonNode ack = objectMapper.readTree((byte[]) message.getPayload());
+                acks.put(ack.get("clientMessageId").asText(), ack);
+                if ("gate".equals(ack.get("clientMessageId").asText())) {
+                    writerHeld.countDown();
+                    release.await(20, TimeUnit.SECONDS);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void holdWriter() throws InterruptedException {
+            // Kept out of the conversations the tests look at
+            Message gate = message(7301L, 7302L, "gate");
+            pipeline.submit(gate, username, "gate");
+            assertThat(writerHeld.await(10, TimeUnit.SECONDS)).isTrue();
+        }
+
+        void releaseWriter() {
+            release.countDown();
+        }
+
+        void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 20_000;
+            while (acks.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertThat(acks).hasSize(count);
+        }
+
+        JsonNode get(String clientMessageId) {
+            return acks.get(clientMessageId);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.chat.service;
+
+import com.chat.dto.HistoryVersion;
+import com.chat.dto.InboxEntry;
+import com.chat.entity.Message;
+import com.chat.entity.User;
+import com.chat.repository.MessageRepository;
+import com.chat.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "chat.retention.chunk-size=300",
+        "chat.retention.max-rows-per-second=0",
+        "chat.presence.flush-interval-ms=3600000",
+        "chat.websocket.reaper-interval-ms=3600000"
+})
+class MessageRetentionServiceTests {
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private FriendService friendService;
+
+    @Autowired
+    private InboxService inboxService;
+
+    @Autowired
+    private MessageArchive archive;
+
+    @Autowired
+    private ConversationTailCache tailCache;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void purgesOnlyMessagesOlderThanTheCutoffInChunks() {
+        User alice = user("retention-alice");
+        User bob = user("retention-bob");
+        friendService.addFriend(alice.getUsername(), bob.getUsername());
+
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(30);
+        List<Message> batch = new ArrayList<>();
+        for (int i = 1000; i > 0; i--) {
+            batch.add(message(alice, bob, "old", cutoff.minusMinutes(i)));
+        }
+        for (int i = 0; i < 5; i++) {
+            batch.add(message(alice, bob, "new " + i, cutoff.plusMinutes(i + 1)));
+        }
+        batch.add(message(bob, alice, "reply", cutoff.plusMinutes(10)));
+        List<Message> saved = messageService.saveBatch(batch);
+        // Bob has read the first 400 old messages; 600 old and 5 new are unread
+        messageService.applyReceipts(bob.getUserId(), alice.getUserId(), 0, saved.get(399).getMessageId());
+        assertThat(unread(bob, alice)).isEqualTo(605);
+        HistoryVersion before = inboxService.getHistoryVersion(alice.getUserId(), bob.getUserId());
+
+        AtomicInteger transactions = new AtomicInteger();
+        MessageRetentionService.RetentionReport report =
+                service(300, 0, transactions).purgeOlderThan(cutoff);
+
+        assertThat(report.rowsDeleted()).isEqualTo(1000);
+        // Chunks of 300, 300, 300 and 100, then one that finds nothing left
+        assertThat(transactions).hasValue(5);
+        assertThat(messageRepository.findConversation(Message.conversationKey(alice.getUserId(), bob.getUserId())))
+                .hasSize(6);
+
+        // The latest message is untouched, the unread counts only cover what is left
+        InboxEntry withAlice = inboxService.getInbox(bob.getUserId()).get(0);
+        assertThat(withAlice.lastPreview).isEqualTo("reply");
+        assertThat(withAlice.unreadCount).isEqualTo(5);
+        assertThat(unread(alice, bob)).isEqualTo(1);
+        assertThat(inboxService.getHistoryVersion(alice.getUserId(), bob.getUserId()).eTag)
+                .isNotEqualTo(before.eTag);
+    }
+
+    @Test
+    void purgeKeepsToTheConfiguredRate() {
+        User alice = user("throttle-alice");
+        User bob = user("throttle-bob");
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(60);
+        List<Message> batch = new ArrayList<>();
+        for (int i = 1000; i > 0; i--) {
+            batch.add(message(alice, bob, "old", cutoff.minusMinutes(i)));
+        }
+        messageService.saveBatch(batch);
+
+        // 1000 rows at 2000 rows per second take at least half a second
+        AtomicInteger transactions = new AtomicInteger();
+        MessageRetentionService.RetentionReport report =
+                service(300, 2000, transactions).purgeOlderThan(cutoff);
+
+        assertThat(report.rowsDeleted()).isEqualTo(1000);
+        assertThat(transactions).hasValue(5);
+        assertThat(report.duration()).isGreaterThanOrEqualTo(Duration.ofMillis(500));
+    }
+
+    // A purge of its own, counting the transactions it starts
+    private MessageRetentionService service(int chunkSize, long maxRowsPerSecond, AtomicInteger transactions) {
+        PlatformTransactionManager counting = new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) throws TransactionException {
+                transactions.incrementAndGet();
+                return transactionManager.getTransaction(definition);
+            }
+
+            @Override
+            public void commit(TransactionStatus status) throws TransactionException {
+                transactionManager.commit(status);
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) throws TransactionException {
+                transactionManager.rollback(status);
+            }
+        };
+        return new MessageRetentionService(messageRepository, archive, tailCache, inboxService, counting,
+                new SimpleMeterRegistry(), Duration.ofDays(7), chunkSize, maxRowsPerSecond);
+    }
+
+    private int unread(User owner, User friend) {
+        return inboxService.getInbox(owner.getUserId()).stream()
+                .filter(e -> e.friendId.equals(friend.getUserId()))
+                .findFirst().orElseThrow().unreadCount;
+    }
+
+    private static Message message(User from, User to, String content, LocalDateTime sentAt) {
+        Message m = new Message();
+        m.setSenderId(from.getUserId());
+        m.setReceiverId(to.getUserId());
+        m.setContent(content);
+        m.setSentAt(sentAt);
+        return m;
+    }
+
+    private User user(String prefix) {
+        String name = prefix + "-" + System.nanoTime();
+        User u = new User();
+        u.setUsername(name);
+        u.setEmail(name + "@example.com");
+        u.setPasswordHash("x");
+        return userRepository.save(u);
+    }
+}
@@ -0,0 +1,78 @@
+package com.chat.service;
+
+import com.chat.dto.MessagePage;
+import com.chat.entity.Message;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class MessageServiceTests {
+
+    @Autowired
+    private MessageService messageService;
+
+    @Test
+    void pagesWalkTheWholeConversationWithoutGapsOrDuplicates() {
+        long alice = 9001L, bob = 9002L, carol = 9003L;
+        List<Long> sent = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.now().minusHours(1);
+        for (int i = 0; i < 120; i++) {
+            // Two messages share each timestamp so the message id tie-breaker matters
+            Message m = message(i % 2 == 0 ? alice : bob, i % 2 == 0 ? bob : alice, start.plusSeconds(i / 2));
+            sent.add(messageService.send(m).getMessageId());
+        }
+        messageService.send(message(alice, carol, start));
+
+        MessagePage latest = messageService.getConversationPage(alice, bob, null, null, 50);
+        assertThat(latest.hasMore).isTrue();
+        assertThat(ids(latest)).containsExactlyElementsOf(sent.subList(70, 120));
+
+        List<Long> walked = new ArrayList<>(ids(latest));
+        MessagePage page = latest;
+        while (page.hasMore) {
+            page = messageService.getConversationPage(bob, alice, page.messages.get(0).getMessageId(), null, 50);
+            walked.addAll(0, ids(page));
+        }
+        assertThat(walked).containsExactlyElementsOf(sent);
+
+        MessagePage newer = messageService.getConversationPage(alice, bob, null, sent.get(99), 500);
+        assertThat(newer.hasMore).isFalse();
+        assertThat(ids(newer)).containsExactlyElementsOf(sent.subList(100, 120));
+    }
+
+    @Test
+    void pageSizeIsCappedAndForeignCursorsAreRejected() {
+        long dave = 9101L, erin = 9102L;
+        Long first = null;
+        for (int i = 0; i < 150; i++) {
+            Long id = messageService.send(message(dave, erin, LocalDateTime.now())).getMessageId();
+            first = first == null ? id : first;
+        }
+        assertThat(messageService.getConversationPage(dave, erin, null, null, 10_000).messages).hasSize(100);
+
+        Long cursor = first;
+        assertThatThrownBy(() -> messageService.getConversationPage(dave, 9103L, cursor, null, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Message message(long from, long to, LocalDateTime sentAt) {
+        Message m = new Message();
+        m.setSenderId(from);
+        m.setReceiverId(to);
+        m.setContent("m");
+        m.setSentAt(sentAt);
+        return m;
+    }
+
+    private static List<Long> ids(MessagePage page) {
+        return page.messages.stream().map(Message::getMessageId).toList();
+    }
+}
@@ -0,0 +1,184 @@
+package com.chat.service;
+
+import com.chat.config.WebSocketSessionRegistry;
+import com.chat.entity.User;
+import com.chat.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "chat.presence.flush-interval-ms=3600000",
+        "chat.websocket.reaper-interval-ms=3600000"
+})
+class PresenceServiceTests {
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private WebSocketSessionRegistry sessionRegistry;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private FriendService friendService;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void reconnectStormIsWrittenInOneFlush() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            User u = new User();
+            u.setUsername("presence" + i);
+            u.setEmail("presence" + i + "@example.com");
+            u.setPasswordHash("x");
+            users.add(u);
+        }
+        users = userRepository.saveAll(users);
+
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+        for (User u : users) {
+            // Two tabs each
+            presenceService.onConnected(connected(u, "a" + u.getUserId()));
+            presenceService.onConnected(connected(u, "b" + u.getUserId()));
+        }
+        presenceService.onDisconnected(disconnected("b" + users.get(0).getUserId()));
+        presenceService.onDisconnected(disconnected("a" + users.get(1).getUserId()));
+        presenceService.onDisconnected(disconnected("b" + users.get(1).getUserId()));
+
+        // Nothing written to users yet
+        assertThat(stats.getEntityUpdateCount()).isZero();
+        assertThat(presenceService.isOnline(users.get(0).getUserId())).isTrue();
+        assertThat(presenceService.isOnline(users.get(1).getUserId())).isFalse();
+        assertThat(presenceService.getSessionCount()).isEqualTo(1997);
+
+        stats.clear();
+        presenceService.flush();
+        // One UPDATE ... IN per (state, second) group instead of 1000 find + save
+        assertThat(stats.getPrepareStatementCount()).isLessThanOrEqualTo(6);
+        assertThat(userRepository.findById(users.get(0).getUserId()).orElseThrow().isOnline()).isTrue();
+        User left = userRepository.findById(users.get(1).getUserId()).orElseThrow();
+        assertThat(left.isOnline()).isFalse();
+        assertThat(left.getLastSeen()).isBefore(LocalDateTime.now().plusSeconds(1));
+    }
+
+    @Test
+    void reaperReleasesSilentSessions() {
+        User u = new User();
+        u.setUsername("silent");
+        u.setEmail("silent@example.com");
+        u.setPasswordHash("x");
+        u = userRepository.save(u);
+
+        presenceService.onConnected(connected(u, "silent-session"));
+        presenceService.touch("silent-session");
+        assertThat(presenceService.getIdleSessions(System.currentTimeMillis() - 60_000)).doesNotContain("silent-session");
+
+        // A negative timeout makes every session idle
+        SessionReaper reaper = new SessionReaper(presenceService, sessionRegistry, new SimpleMeterRegistry(), -1000);
+        assertThat(reaper.reap()).isPositive();
+        assertThat(presenceService.isOnline(u.getUserId())).isFalse();
+
+        // The disconnect event that follows the close is a no-op
+        presenceService.onDisconnected(disconnected("silent-session"));
+        assertThat(presenceService.isOnline(u.getUserId())).isFalse();
+    }
+
+    @Test
+    void clusterNodesShareOnlineStateThroughTheLease() throws Exception {
+        User u = new User();
+        u.setUsername("roaming");
+        u.setEmail("roaming@example.com");
+        u.setPasswordHash("x");
+        u = userRepository.save(u);
+        Long id = u.getUserId();
+        PresenceService nodeA = node(1500);
+        PresenceService nodeB = node(1500);
+
+        // Connected to both nodes; node A's session ends, node B's stays
+        nodeA.onConnected(connected(u, "on-a"));
+        nodeB.onConnected(connected(u, "on-b"));
+        nodeA.flush();
+        nodeB.flush();
+        nodeA.onDisconnected(disconnected("on-a"));
+        nodeA.flush();
+        assertThat(userRepository.findById(id).orElseThrow().isOnline()).isTrue();
+        assertThat(nodeA.getOnline(List.of(id))).containsExactly(id);
+
+        // Another node restarting leaves the flags alone
+        node(1500).resetOnlineFlags();
+        assertThat(userRepository.findById(id).orElseThrow().isOnline()).isTrue();
+
+        // Node B keeps renewing the lease, so node A's expiry pass keeps the user online
+        Thread.sleep(1600);
+        nodeB.flush();
+        nodeA.flush();
+        assertThat(nodeA.getOnline(List.of(id))).containsExactly(id);
+
+        // Once no node renews it, the lease runs out and the user goes offline everywhere
+        nodeB.onDisconnected(disconnected("on-b"));
+        Thread.sleep(1600);
+        nodeA.flush();
+        assertThat(userRepository.findById(id).orElseThrow().isOnline()).isFalse();
+        assertThat(nodeB.getOnline(List.of(id))).isEmpty();
+    }
+
+    // A second application node sharing the database, as in bus mode
+    private PresenceService node(long leaseMs) {
+        return new PresenceService(userRepository, userService, friendService, messagingTemplate,
+                transactionManager, 1000, "bus", leaseMs);
+    }
+
+    private static SessionConnectedEvent connected(User user, String sessionId) {
+        ChatUserDetails details = new ChatUserDetails(user.getUserId(), user.getUsername(), "x", List.of());
+        Authentication auth = new UsernamePasswordAuthenticationToken(details, null, List.of());
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT_ACK);
+        accessor.setSessionId(sessionId);
+        accessor.setUser(auth);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        return new SessionConnectedEvent(PresenceServiceTests.class, message, auth);
+    }
+
+    private static SessionDisconnectEvent disconnected(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT);
+        accessor.setSessionId(sessionId);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        return new SessionDisconnectEvent(PresenceServiceTests.class, message, sessionId, CloseStatus.NORMAL);
+    }
+}
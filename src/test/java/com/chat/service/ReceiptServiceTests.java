@@ -0,0 +1,133 @@
+package com.chat.service;
+
+import com.chat.entity.Message;
+import com.chat.entity.User;
+import com.chat.repository.MessageRepository;
+import com.chat.repository.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "chat.presence.flush-interval-ms=3600000",
+        "chat.websocket.reaper-interval-ms=3600000"
+})
+class ReceiptServiceTests {
+
+    @Autowired
+    private ReceiptService receiptService;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    @Qualifier("brokerChannel")
+    private AbstractSubscribableChannel brokerChannel;
+
+    @Test
+    void acksAreWrittenWithOneUpdatePerConversation() {
+        User alice = user("receipt-alice");
+        User bob = user("receipt-bob");
+        User carol = user("receipt-carol");
+        List<Long> toBob = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            toBob.add(send(alice, bob).getMessageId());
+        }
+        Long fromBob = send(bob, alice).getMessageId();
+        List<Long> toCarol = List.of(send(alice, carol).getMessageId(), send(alice, carol).getMessageId());
+        assertThat(messageRepository.findById(toBob.get(0)).orElseThrow().isDelivered()).isFalse();
+
+        List<org.springframework.messaging.Message<?>> published = new CopyOnWriteArrayList<>();
+        MessageHandler capture = published::add;
+        brokerChannel.subscribe(capture);
+        try {
+            // Bob's client acks every message as it arrives, then reads the first 30
+            for (Long id : toBob) {
+                receiptService.acknowledge(bob.getUserId(), alice.getUserId(), id, null);
+            }
+            receiptService.acknowledge(bob.getUserId(), alice.getUserId(), null, toBob.get(29));
+            receiptService.acknowledge(carol.getUserId(), alice.getUserId(), toCarol.get(1), null);
+
+            Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+            stats.clear();
+            assertThat(receiptService.flush()).isEqualTo(2);
+            // Per conversation one UPDATE of messages and one of its summaries, plus at most
+            // the username lookups for the notifications
+            assertThat(stats.getPrepareStatementCount()).isLessThanOrEqualTo(5);
+        } finally {
+            brokerChannel.unsubscribe(capture);
+        }
+
+        assertThat(messageRepository.findAllById(toBob)).allMatch(Message::isDelivered);
+        assertThat(messageRepository.findAllById(toBob.subList(0, 30))).allMatch(Message::isRead);
+        assertThat(messageRepository.findAllById(toBob.subList(30, 40))).noneMatch(Message::isRead);
+        assertThat(messageRepository.findAllById(toCarol)).allMatch(m -> m.isDelivered() && !m.isRead());
+        // Only messages sent to the reader are touched
+        assertThat(messageRepository.findById(fromBob).orElseThrow().isDelivered()).isFalse();
+
+        // Alice gets one aggregated update per conversation
+        List<String> updates = published.stream()
+                .filter(m -> ("/user/" + alice.getUsername() + ReceiptService.RECEIPT_DESTINATION)
+                        .equals(SimpMessageHeaderAccessor.getDestination(m.getHeaders())))
+                .map(m -> new String((byte[]) m.getPayload(), StandardCharsets.UTF_8))
+                .toList();
+        assertThat(updates).hasSize(2);
+        assertThat(updates).anySatisfy(json -> assertThat(json)
+                .contains("\"readerId\":" + bob.getUserId())
+                .contains("\"readUpTo\":\"" + toBob.get(29) + "\""));
+
+        // Acking again changes nothing and notifies nobody
+        published.clear();
+        brokerChannel.subscribe(capture);
+        try {
+            receiptService.acknowledge(bob.getUserId(), alice.getUserId(), toBob.get(39), toBob.get(29));
+            assertThat(receiptService.flush()).isEqualTo(1);
+        } finally {
+            brokerChannel.unsubscribe(capture);
+        }
+        assertThat(published).isEmpty();
+    }
+
+    private Message send(User from, User to) {
+        Message m = new Message();
+        m.setSenderId(from.getUserId());
+        m.setReceiverId(to.getUserId());
+        m.setContent("m");
+        m.setSentAt(LocalDateTime.now());
+        return messageService.send(m);
+    }
+
+    private User user(String prefix) {
+        String name = prefix + "-" + System.nanoTime();
+        User u = new User();
+        u.setUsername(name);
+        u.setEmail(name + "@example.com");
+        u.setPasswordHash("x");
+        return userRepository.save(u);
+    }
+}
@@ -0,0 +1,89 @@
+package com.chat.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two TCP bus nodes on localhost exchange a message in each direction; a node with the
+ * wrong secret gets nothing through.
+ */
+class TcpClusterBusTests {
+
+    private static final String SECRET = "bus-test-secret";
+
+    @Test
+    void nodesDeliverToEachOther() throws Exception {
+        int portA = freePort();
+        int portB = freePort();
+        TcpClusterBus a = bus(new SimpleMeterRegistry(), portA, "localhost:" + portB, SECRET);
+        TcpClusterBus b = bus(new SimpleMeterRegistry(), portB, "localhost:" + portA, SECRET);
+        BlockingQueue<ClusterMessage> atA = new LinkedBlockingQueue<>();
+        BlockingQueue<ClusterMessage> atB = new LinkedBlockingQueue<>();
+        a.subscribe(atA::add);
+        b.subscribe(atB::add);
+        a.start();
+        b.start();
+        try {
+            a.publish(new ClusterMessage("a", "/topic/messages", Map.of("content-type", "application/json"),
+                    "{\"content\":\"hi\"}".getBytes(StandardCharsets.UTF_8)));
+            b.publish(new ClusterMessage("b", "/user/alice/queue/presence", Map.of(), new byte[0]));
+
+            ClusterMessage fromA = atB.poll(5, TimeUnit.SECONDS);
+            assertThat(fromA).isNotNull();
+            assertThat(fromA.destination()).isEqualTo("/topic/messages");
+            assertThat(fromA.headers()).containsEntry("content-type", "application/json");
+            assertThat(new String(fromA.payload(), StandardCharsets.UTF_8)).isEqualTo("{\"content\":\"hi\"}");
+
+            ClusterMessage fromB = atA.poll(5, TimeUnit.SECONDS);
+            assertThat(fromB).isNotNull();
+            assertThat(fromB.origin()).isEqualTo("b");
+        } finally {
+            a.stop();
+            b.stop();
+        }
+    }
+
+    @Test
+    void peerWithTheWrongSecretIsRejected() throws Exception {
+        int portA = freePort();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TcpClusterBus a = bus(registry, portA, "", SECRET);
+        TcpClusterBus intruder = bus(new SimpleMeterRegistry(), freePort(), "localhost:" + portA, "guessed");
+        BlockingQueue<ClusterMessage> atA = new LinkedBlockingQueue<>();
+        a.subscribe(atA::add);
+        a.start();
+        intruder.start();
+        try {
+            intruder.publish(new ClusterMessage("x", "/user/alice/queue/messages", Map.of(), new byte[0]));
+
+            assertThat(atA.poll(1, TimeUnit.SECONDS)).isNull();
+            assertThat(registry.get("chat.cluster.rejected").counter().count()).isGreaterThanOrEqualTo(1);
+        } finally {
+            a.stop();
+            intruder.stop();
+        }
+    }
+
+    private static TcpClusterBus bus(SimpleMeterRegistry registry, int port, String peers, String secret)
+            throws IOException {
+        return new TcpClusterBus(registry, "127.0.0.1", port,
+                peers.isEmpty() ? List.of() : List.of(peers), 100, secret);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}